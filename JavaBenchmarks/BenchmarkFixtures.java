@@ -0,0 +1,182 @@
+package com.documentgenerationservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Синтетические шаблоны для бенчмарков. Файлы в fixtures/ генерируются этим классом
+ * с фиксированным seed и коммитятся, чтобы результаты между релизами были сравнимы.
+ * Перегенерация: java ... BenchmarkFixtures [каталог]
+ */
+public final class BenchmarkFixtures {
+
+    public enum Size {
+        SMALL(1, 10),
+        MEDIUM(50, 500),
+        LARGE(500, 5000);
+
+        private final int pages;
+        private final int fields;
+
+        Size(int pages, int fields) {
+            this.pages = pages;
+            this.fields = fields;
+        }
+
+        public int getPages() { return pages; }
+        public int getFields() { return fields; }
+        public String fileName(String extension) { return "template-" + name().toLowerCase() + "." + extension; }
+    }
+
+    private static final long SEED = 20240601L;
+    private static final int LINES_PER_PAGE = 40;
+    private static final String[] WORDS = {
+            "agreement", "party", "payment", "contract", "term", "service", "period", "clause",
+            "obligation", "amount", "date", "signature", "invoice", "delivery", "notice", "the",
+            "and", "of", "to", "within", "shall", "under", "this", "any", "such", "provided"
+    };
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BenchmarkFixtures() {}
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "JavaBenchmarks/fixtures");
+        Files.createDirectories(directory);
+
+        for (Size size : Size.values()) {
+            Files.write(directory.resolve(size.fileName("txt")), textTemplate(size).getBytes(StandardCharsets.UTF_8));
+            try (OutputStream outputStream = Files.newOutputStream(directory.resolve(size.fileName("docx")))) {
+                docxTemplate(size, outputStream);
+            }
+            objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValue(directory.resolve(size.fileName("json")).toFile(), data(size));
+        }
+    }
+
+    public static Path directory() {
+        return Paths.get(System.getProperty("benchmark.fixtures", "JavaBenchmarks/fixtures"));
+    }
+
+    public static String loadText(Size size) throws IOException {
+        return Files.readString(directory().resolve(size.fileName("txt")));
+    }
+
+    public static byte[] loadDocx(Size size) throws IOException {
+        return Files.readAllBytes(directory().resolve(size.fileName("docx")));
+    }
+
+    public static Map<String, String> loadData(Size size) throws IOException {
+        return objectMapper.readValue(directory().resolve(size.fileName("json")).toFile(),
+                new TypeReference<LinkedHashMap<String, String>>() {});
+    }
+
+    static String textTemplate(Size size) {
+        Random random = new Random(SEED + size.ordinal());
+        StringBuilder text = new StringBuilder();
+        int lines = size.pages * LINES_PER_PAGE;
+        int field = 0;
+
+        for (int line = 0; line < lines; line++) {
+            if (line % LINES_PER_PAGE == 0) {
+                text.append("# Section ").append(line / LINES_PER_PAGE + 1).append('\n');
+                continue;
+            }
+            if (line % 10 == 5) {
+                text.append("- ");
+            }
+            text.append(sentence(random));
+            // Переменные распределены равномерно по всему документу
+            if (field < size.fields && (long) line * size.fields / lines >= field) {
+                text.append(" ${field").append(field).append('}');
+                field++;
+                while (field < size.fields && (long) line * size.fields / lines >= field) {
+                    text.append(" ${field").append(field).append('}');
+                    field++;
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    static void docxTemplate(Size size, OutputStream outputStream) throws IOException {
+        Random random = new Random(SEED + 100 + size.ordinal());
+        int lines = size.pages * LINES_PER_PAGE;
+        int field = 0;
+
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun()
+                    .setText("Contract ${field0}");
+            document.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun()
+                    .setText("Confidential");
+
+            for (int line = 0; line < lines; line++) {
+                if (line % LINES_PER_PAGE == LINES_PER_PAGE - 1) {
+                    // Таблица с переменными раз в страницу
+                    XWPFTable table = document.createTable(2, 2);
+                    table.getRow(0).getCell(0).setText("Item");
+                    table.getRow(0).getCell(1).setText("Value");
+                    table.getRow(1).getCell(0).setText(WORDS[random.nextInt(WORDS.length)]);
+                    table.getRow(1).getCell(1).setText(field < size.fields ? "${field" + field++ + "}" : "-");
+                    continue;
+                }
+
+                XWPFParagraph paragraph = document.createParagraph();
+                XWPFRun run = paragraph.createRun();
+                run.setText(sentence(random));
+
+                while (field < size.fields && (long) line * size.fields / lines >= field) {
+                    if (field % 3 == 0) {
+                        // Word часто разбивает переменную на несколько run
+                        XWPFRun head = paragraph.createRun();
+                        head.setText(" ${fie");
+                        head.setBold(true);
+                        paragraph.createRun().setText("ld" + field + "}");
+                    } else {
+                        paragraph.createRun().setText(" ${field" + field + "}");
+                    }
+                    field++;
+                }
+            }
+
+            document.write(outputStream);
+        }
+    }
+
+    static Map<String, String> data(Size size) {
+        Random random = new Random(SEED + 200 + size.ordinal());
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int field = 0; field < size.fields; field++) {
+            data.put("field" + field, sentence(random).substring(0, 5 + random.nextInt(20)));
+        }
+        return data;
+    }
+
+    private static String sentence(Random random) {
+        StringBuilder sentence = new StringBuilder();
+        int words = 8 + random.nextInt(8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+}
@@ -0,0 +1,189 @@
+package com.documentgenerationservice.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранение полей документа: строка document_data на поле (прежняя схема) против одного
+ * JSON-столбца documents.data_json. Запись и чтение одного документа через JDBC на файловой H2;
+ * занятое место на диске для каждой схемы печатается в конце прогона.
+ * Нужен com.h2database:h2 на classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class DocumentDataStorageBenchmarks {
+
+    // Документов каждой схемы на старте: иначе размер на диске определяется округлением до страницы
+    private static final int STORAGE_SAMPLE = 100;
+
+    private static final TypeReference<Map<String, String>> MAP_TYPE = new TypeReference<>() {};
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BenchmarkFixtures.Size size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private Path directory;
+    private Connection connection;
+    private Map<String, String> data;
+    private long rowsDocumentId;
+    private long jsonDocumentId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = BenchmarkFixtures.loadData(size);
+        directory = Files.createTempDirectory("benchmark-document-data");
+        connection = DriverManager.getConnection("jdbc:h2:" + directory.resolve("db") + ";MODE=PostgreSQL");
+        connection.setAutoCommit(false);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table documents_rows (id bigint primary key, name varchar(255))");
+            statement.execute("create table document_data (document_id bigint not null references documents_rows(id),"
+                    + " field_name varchar(255) not null, field_value text, primary key (document_id, field_name))");
+            statement.execute("create table documents_json (id bigint primary key, name varchar(255), data_json json)");
+        }
+        connection.commit();
+
+        rowsDocumentId = insertRows();
+        jsonDocumentId = insertJson();
+        for (int i = 1; i < STORAGE_SAMPLE; i++) {
+            insertRows();
+            insertJson();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("checkpoint sync");
+            long rowsBytes = diskSpace(statement, "DOCUMENTS_ROWS") + diskSpace(statement, "DOCUMENT_DATA");
+            long jsonBytes = diskSpace(statement, "DOCUMENTS_JSON");
+            long rowsDocuments = count(statement, "documents_rows");
+            long jsonDocuments = count(statement, "documents_json");
+            System.out.printf("%n[%s] %d fields: document_data %d bytes/document (%d documents), data_json %d bytes/document (%d documents)%n",
+                    size, data.size(), rowsBytes / rowsDocuments, rowsDocuments, jsonBytes / jsonDocuments, jsonDocuments);
+        }
+        connection.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long insertDocumentDataRows() throws SQLException {
+        return insertRows();
+    }
+
+    @Benchmark
+    public long insertDataJson() throws Exception {
+        return insertJson();
+    }
+
+    @Benchmark
+    public Map<String, String> readDocumentDataRows() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select field_name, field_value from document_data where document_id = ?")) {
+            select.setLong(1, rowsDocumentId);
+            Map<String, String> result = new HashMap<>();
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    result.put(resultSet.getString(1), resultSet.getString(2));
+                }
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> readDataJson() throws Exception {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select data_json from documents_json where id = ?")) {
+            select.setLong(1, jsonDocumentId);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                return objectMapper.readValue(resultSet.getBytes(1), MAP_TYPE);
+            }
+        }
+    }
+
+    /**
+     * Как @ElementCollection при JDBC-батчах: строка документа и батч строк полей
+     */
+    private long insertRows() throws SQLException {
+        long id = nextId.incrementAndGet();
+        try (PreparedStatement document = connection.prepareStatement("insert into documents_rows values (?, ?)");
+             PreparedStatement field = connection.prepareStatement("insert into document_data values (?, ?, ?)")) {
+            document.setLong(1, id);
+            document.setString(2, "benchmark");
+            document.executeUpdate();
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                field.setLong(1, id);
+                field.setString(2, entry.getKey());
+                field.setString(3, entry.getValue());
+                field.addBatch();
+            }
+            field.executeBatch();
+        }
+        connection.commit();
+        return id;
+    }
+
+    private long insertJson() throws Exception {
+        long id = nextId.incrementAndGet();
+        try (PreparedStatement document = connection.prepareStatement(
+                "insert into documents_json values (?, ?, ? format json)")) {
+            document.setLong(1, id);
+            document.setString(2, "benchmark");
+            document.setBytes(3, objectMapper.writeValueAsBytes(data));
+            document.executeUpdate();
+        }
+        connection.commit();
+        return id;
+    }
+
+    private static long count(Statement statement, String table) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("select count(*) from " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static long diskSpace(Statement statement, String table) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("call disk_space_used('" + table + "')")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.documentgenerationservice.benchmark;
+
+import com.documentgenerationservice.model.InMemoryMultipartFile;
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.documentgenerationservice.service.CompiledTemplate;
+import com.documentgenerationservice.service.CompiledTemplateCache;
+import com.documentgenerationservice.service.DocxBlobStore;
+import com.documentgenerationservice.service.DocxRenderEngine;
+import com.documentgenerationservice.service.DocxTemplateIndexCache;
+import com.documentgenerationservice.service.FileProcessingService;
+import com.documentgenerationservice.service.GenerationMetrics;
+import com.documentgenerationservice.service.PdfFontRegistry;
+import com.documentgenerationservice.service.StreamingDocxRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки горячих путей генерации и экспорта документов
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class GenerationBenchmarks {
+
+    private static final String DOCX_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BenchmarkFixtures.Size size;
+
+    private FileProcessingService fileProcessingService;
+    private CompiledTemplateCache compiledTemplateCache;
+
+    private String textTemplate;
+    private String generatedContent;
+    private byte[] docxTemplate;
+    private Map<String, String> data;
+    private TemplateVersion template;
+    private TemplateVersion docxTemplateEntity;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        textTemplate = BenchmarkFixtures.loadText(size);
+        docxTemplate = BenchmarkFixtures.loadDocx(size);
+        data = BenchmarkFixtures.loadData(size);
+
+        // Собираем сервис без Spring-контекста
+        compiledTemplateCache = new CompiledTemplateCache(16);
+        fileProcessingService = new FileProcessingService();
+        inject(fileProcessingService, "compiledTemplateCache", compiledTemplateCache);
+        inject(fileProcessingService, "docxTemplateIndexCache", new DocxTemplateIndexCache(16));
+        inject(fileProcessingService, "streamingDocxRenderer", new StreamingDocxRenderer());
+        inject(fileProcessingService, "defaultDocxEngine", "poi");
+        inject(fileProcessingService, "pdfMaxMemoryKb", 4096L);
+        GenerationMetrics metrics = new GenerationMetrics();
+        inject(metrics, "meterRegistry", new SimpleMeterRegistry());
+        inject(fileProcessingService, "metrics", metrics);
+        PdfFontRegistry pdfFontRegistry = new PdfFontRegistry(
+                System.getProperty("benchmark.pdf.font.regular", ""), System.getProperty("benchmark.pdf.font.bold", ""));
+        pdfFontRegistry.init();
+        inject(fileProcessingService, "pdfFontRegistry", pdfFontRegistry);
+        DocxBlobStore docxBlobStore = new DocxBlobStore(Files.createTempDirectory("benchmark-blobs").toString());
+        docxBlobStore.init();
+        inject(fileProcessingService, "docxBlobStore", docxBlobStore);
+
+        Template textTemplateEntity = new Template("benchmark", textTemplate, null);
+        textTemplateEntity.setId(1L);
+        template = new TemplateVersion(textTemplateEntity, 1);
+        inject(template, "id", 1L);
+
+        Template docxTemplateHead = new Template("benchmark-docx", "", null);
+        docxTemplateHead.setId(2L);
+        String docxHash = DocxBlobStore.hash(docxTemplate);
+        docxBlobStore.putIfAbsent(docxHash, docxTemplate);
+        docxTemplateHead.setDocxBlobHash(docxHash);
+        docxTemplateEntity = new TemplateVersion(docxTemplateHead, 1);
+        inject(docxTemplateEntity, "id", 2L);
+
+        generatedContent = CompiledTemplate.compile(textTemplate).render(data);
+    }
+
+    /** Путь processTemplate: компиляция и рендеринг на каждый вызов */
+    @Benchmark
+    public String processTemplate() {
+        return CompiledTemplate.compile(textTemplate).render(data);
+    }
+
+    /** Путь generateContent: скомпилированный шаблон берется из кэша */
+    @Benchmark
+    public String generateContent() {
+        return compiledTemplateCache.get(template).render(data);
+    }
+
+    @Benchmark
+    public Map<String, String> extractFieldsFromDocxContent() {
+        return fileProcessingService.extractFieldsFromDocxContent(textTemplate);
+    }
+
+    @Benchmark
+    public String extractTextFromDocx() throws IOException {
+        return fileProcessingService.extractTextFromDocx(
+                new InMemoryMultipartFile("template.docx", DOCX_CONTENT_TYPE, docxTemplate));
+    }
+
+    /** Без кэша индекса: каждый раз полный обход документа */
+    @Benchmark
+    public byte[] generateDocxFromTemplate() throws IOException {
+        return fileProcessingService.generateDocxFromTemplate(
+                new InMemoryMultipartFile("template.docx", DOCX_CONTENT_TYPE, docxTemplate), data);
+    }
+
+    @Benchmark
+    public byte[] generateDocxFromTemplateIndexed() throws IOException {
+        return fileProcessingService.generateDocxFromTemplate(docxTemplateEntity, data, DocxRenderEngine.POI);
+    }
+
+    @Benchmark
+    public byte[] generateDocxFromTemplateStreaming() throws IOException {
+        return fileProcessingService.generateDocxFromTemplate(docxTemplateEntity, data, DocxRenderEngine.STREAMING);
+    }
+
+    @Benchmark
+    public byte[] generateDocxFromTextTemplate() throws IOException {
+        return fileProcessingService.generateDocxFromTextTemplate(textTemplate, data);
+    }
+
+    @Benchmark
+    public byte[] generatePdfDocument() throws IOException {
+        return fileProcessingService.generatePdfDocument(generatedContent);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
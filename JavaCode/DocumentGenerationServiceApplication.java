@@ -3,11 +3,21 @@ package com.documentgenerationservice;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Map;
+
 @SpringBootApplication
 public class DocumentGenerationServiceApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(DocumentGenerationServiceApplication.class, args);
+        SpringApplication application = new SpringApplication(DocumentGenerationServiceApplication.class);
+        // Значения по умолчанию, переопределяются application.properties и переменными окружения
+        application.setDefaultProperties(Map.of(
+                "management.endpoints.web.exposure.include", "health,prometheus",
+                "management.metrics.tags.application", "document-generation-service",
+                // Метрики пула Tomcat (tomcat.threads.busy, tomcat.threads.config.max)
+                "server.tomcat.mbeanregistry.enabled", "true"
+        ));
+        application.run(args);
     }
 
 }
@@ -1,12 +1,16 @@
 package com.documentgenerationservice.config;
 
+import com.documentgenerationservice.service.AuthTokenService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -17,6 +21,9 @@ import java.util.List;
 @EnableWebSecurity
 public class SecurityConfig {
 
+    @Autowired
+    private AuthTokenService authTokenService;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -32,7 +39,13 @@ public class SecurityConfig {
                 )
                 .formLogin().disable() // Отключаем form login
                 .httpBasic().disable() // Отключаем basic auth
-                .logout().disable(); // Отключаем logout
+                .logout().disable() // Отключаем logout
+                .addFilterBefore(new TokenAuthenticationFilter(authTokenService), UsernamePasswordAuthenticationFilter.class);
+
+        if (authTokenService.isTokenMode()) {
+            // Пользователь приходит в подписанном токене, сессии не создаются
+            http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+        }
 
         return http.build();
     }
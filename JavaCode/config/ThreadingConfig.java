@@ -0,0 +1,44 @@
+package com.documentgenerationservice.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Режим потоков обработки запросов. При spring.threads.virtual.enabled=true на JDK 21+
+ * Spring Boot запускает запросы Tomcat (и вместе с ними JPA-вызовы) на виртуальных потоках;
+ * CPU-тяжелый рендеринг при этом идет в RenderingBulkhead. На платформенных потоках размер
+ * пула задается server.tomcat.threads.max, его загрузка видна в метриках tomcat.threads.*.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsRequested;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void reportThreadingMode() {
+        boolean supported = Runtime.version().feature() >= 21;
+        boolean virtual = virtualThreadsRequested && supported;
+
+        if (virtualThreadsRequested && !supported) {
+            logger.warn("Virtual threads require JDK 21+, running on JDK {}: requests use platform threads",
+                    Runtime.version().feature());
+        }
+        logger.info("Request handling on {} threads", virtual ? "virtual" : "platform");
+
+        Gauge.builder("app.threads.virtual", () -> virtual ? 1 : 0)
+                .description("1 if requests are handled on virtual threads")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.documentgenerationservice.config;
+
+import com.documentgenerationservice.model.User;
+import com.documentgenerationservice.service.AuthTokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * В режиме токенов достает токен из заголовка Authorization: Bearer или из cookie
+ * и кладет проверенного пользователя в атрибут запроса USER_ATTRIBUTE.
+ * Запрос без токена проходит дальше, контроллеры сами отвечают 401.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String USER_ATTRIBUTE = "authenticatedUser";
+
+    private static final String BEARER = "Bearer ";
+
+    private final AuthTokenService authTokenService;
+
+    public TokenAuthenticationFilter(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !authTokenService.isTokenMode();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String token = extractToken(request);
+        if (token != null) {
+            authTokenService.verify(token)
+                    .ifPresent(user -> request.setAttribute(USER_ATTRIBUTE, user));
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Пользователь текущего запроса в режиме токенов, иначе null
+     */
+    public static User currentUser(HttpServletRequest request) {
+        return (User) request.getAttribute(USER_ATTRIBUTE);
+    }
+
+    private static String extractToken(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER)) {
+            return header.substring(BEARER.length()).trim();
+        }
+
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (AuthTokenService.COOKIE_NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
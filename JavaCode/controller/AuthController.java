@@ -1,12 +1,15 @@
 package com.documentgenerationservice.controller;
 
+import com.documentgenerationservice.config.TokenAuthenticationFilter;
 import com.documentgenerationservice.dto.AuthRequest;
 import com.documentgenerationservice.dto.AuthResponse;
 import com.documentgenerationservice.model.User;
+import com.documentgenerationservice.service.AuthTokenService;
 import com.documentgenerationservice.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,6 +23,9 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private AuthTokenService authTokenService;
+
     @PostMapping("/register")
     public ResponseEntity<?> register(@RequestBody AuthRequest authRequest, HttpServletRequest request) {
         try {
@@ -29,11 +35,15 @@ public class AuthController {
                     authRequest.getPassword()
             );
 
+            AuthResponse response = new AuthResponse(user.getUsername(), user.getEmail());
+            if (authTokenService.isTokenMode()) {
+                return withToken(user, response);
+            }
+
             // Создаем сессию
             HttpSession session = request.getSession();
             session.setAttribute("user", user);
 
-            AuthResponse response = new AuthResponse(user.getUsername(), user.getEmail());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -45,13 +55,18 @@ public class AuthController {
         try {
 
             // Всегда получаем свежего пользователя из БД
-            User user = userService.findByUsername(authRequest.getUsername())
+            User user = userService.loadByUsername(authRequest.getUsername())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             if (!userService.validatePassword(authRequest.getPassword(), user.getPassword())) {
                 return ResponseEntity.status(401).body("Invalid password");
             }
 
+            AuthResponse response = new AuthResponse(user.getUsername(), user.getEmail());
+            if (authTokenService.isTokenMode()) {
+                return withToken(user, response);
+            }
+
             // Инвалидируем старую сессию если есть
             HttpSession oldSession = request.getSession(false);
             if (oldSession != null) {
@@ -62,7 +77,6 @@ public class AuthController {
             HttpSession newSession = request.getSession(true);
             newSession.setAttribute("user", user);
 
-            AuthResponse response = new AuthResponse(user.getUsername(), user.getEmail());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.status(401).body("Invalid credentials");
@@ -80,18 +94,28 @@ public class AuthController {
             }
             session.invalidate();
         }
+        if (authTokenService.isTokenMode()) {
+            // Токен не отзывается на сервере: клиент теряет cookie, а сам токен истекает по TTL
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, authTokenService.expiredCookie().toString())
+                    .body("Logout successful");
+        }
         return ResponseEntity.ok("Logout successful");
     }
 
     @GetMapping("/current-user")
     public ResponseEntity<?> getCurrentUser(HttpServletRequest request) {
+        if (authTokenService.isTokenMode()) {
+            return currentTokenUser(request, false);
+        }
+
         HttpSession session = request.getSession(false);
 
         if (session != null) {
             User sessionUser = (User) session.getAttribute("user");
 
             if (sessionUser != null) {
-                // Всегда проверяем актуальность пользователя в БД
+                // Проверяем актуальность пользователя (кэш с коротким TTL, изменения через UserService сбрасывают его сразу)
                 Optional<User> dbUser = userService.findByUsername(sessionUser.getUsername());
                 if (dbUser.isPresent()) {
                     User freshUser = dbUser.get();
@@ -120,6 +144,10 @@ public class AuthController {
 
     @PostMapping("/refresh-session")
     public ResponseEntity<?> refreshSession(HttpServletRequest request) {
+        if (authTokenService.isTokenMode()) {
+            return currentTokenUser(request, true);
+        }
+
         HttpSession session = request.getSession(false);
         if (session == null) {
             return ResponseEntity.status(401).body("No active session");
@@ -142,4 +170,36 @@ public class AuthController {
             return ResponseEntity.status(401).body("User not found");
         }
     }
+
+    /**
+     * current-user и refresh-session в режиме токенов. Пользователь сверяется с БД (через кэш),
+     * refresh выпускает новый токен с продленным сроком и актуальными данными.
+     */
+    private ResponseEntity<?> currentTokenUser(HttpServletRequest request, boolean reissue) {
+        User tokenUser = TokenAuthenticationFilter.currentUser(request);
+        if (tokenUser == null) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+
+        Optional<User> dbUser = userService.findByUsername(tokenUser.getUsername());
+        if (dbUser.isEmpty() || !dbUser.get().getId().equals(tokenUser.getId())) {
+            // Пользователь удален (или имя занято другим)
+            return ResponseEntity.status(401)
+                    .header(HttpHeaders.SET_COOKIE, authTokenService.expiredCookie().toString())
+                    .body("User not found");
+        }
+
+        User freshUser = dbUser.get();
+        AuthResponse response = new AuthResponse(freshUser.getUsername(), freshUser.getEmail());
+        if (reissue || !isUserDataCurrent(tokenUser, freshUser)) {
+            return withToken(freshUser, response);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> withToken(User user, AuthResponse response) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, authTokenService.cookie(authTokenService.issue(user)).toString())
+                .body(response);
+    }
 }
\ No newline at end of file
@@ -1,23 +1,52 @@
 package com.documentgenerationservice.controller;
 
+import com.documentgenerationservice.config.TokenAuthenticationFilter;
+import com.documentgenerationservice.dto.BatchGenerationResult;
 import com.documentgenerationservice.dto.DocumentDTO;
+import com.documentgenerationservice.dto.ExportJobDTO;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import com.documentgenerationservice.dto.ZipExportRequest;
 import com.documentgenerationservice.model.Document;
-import com.documentgenerationservice.model.InMemoryMultipartFile;
+import com.documentgenerationservice.model.DocumentStatus;
 import com.documentgenerationservice.model.Template;
 import com.documentgenerationservice.model.User;
+import com.documentgenerationservice.service.DataRowReader;
+import com.documentgenerationservice.service.DocumentExportService;
 import com.documentgenerationservice.service.DocumentService;
+import com.documentgenerationservice.service.DocxRenderEngine;
+import com.documentgenerationservice.service.ExportFormat;
+import com.documentgenerationservice.service.ExportJob;
+import com.documentgenerationservice.service.ExportJobService;
+import com.documentgenerationservice.service.ExportedFile;
 import com.documentgenerationservice.service.FileProcessingService;
+import com.documentgenerationservice.service.GenerationIdempotency;
+import com.documentgenerationservice.service.MailMergeService;
 import com.documentgenerationservice.service.TemplateService;
 import com.documentgenerationservice.service.UserService;
+import com.documentgenerationservice.service.ZipExportService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
-
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -36,20 +65,63 @@ public class DocumentController {
     @Autowired
     private FileProcessingService fileProcessingService;
 
+    @Autowired
+    private DocumentExportService documentExportService;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @Autowired
+    private GenerationIdempotency generationIdempotency;
+
+    @Autowired
+    private ZipExportService zipExportService;
+
+    @Autowired
+    private MailMergeService mailMergeService;
+
     @GetMapping
-    public ResponseEntity<?> getUserDocuments(HttpServletRequest request) {
+    public ResponseEntity<?> getUserDocuments(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long templateId,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletRequest request) {
+        User user;
         try {
-            User user = getCurrentUser(request);
-            List<DocumentDTO> documents = documentService.getUserDocumentsDTO(user);
-            return ResponseEntity.ok(documents);
+            user = getCurrentUser(request);
         } catch (RuntimeException e) {
             return ResponseEntity.status(401).body("Not authenticated");
         }
+
+        ListQuery query = new ListQuery();
+        query.setPage(page);
+        query.setSize(size);
+        query.setSort(sort);
+        query.setCursor(cursor);
+        query.setStatus(status);
+        query.setTemplateId(templateId);
+        query.setName(name);
+        query.setFrom(from);
+        query.setTo(to);
+
+        try {
+            PageResponse<DocumentDTO> documents = documentService.getUserDocumentsPage(user, query);
+            return ResponseEntity.ok(documents);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping("/generate")
     public ResponseEntity<Document> generateDocument(
             HttpServletRequest request,
+            @RequestHeader(value = GenerationIdempotency.HEADER, required = false) String idempotencyKey,
             @RequestBody Map<String, Object> requestBody) {
 
         User user = getCurrentUser(request);
@@ -62,12 +134,130 @@ public class DocumentController {
         Template template = templateService.getTemplateById(templateId)
                 .orElseThrow(() -> new RuntimeException("Template not found"));
 
-        Document document = documentService.generateDocument(name, template, user, data);
+        String requestKey = generationIdempotency.requestKey(idempotencyKey, template, data);
+        Document document = documentService.generateDocument(name, template, user, data, requestKey);
         return ResponseEntity.ok(document);
     }
 
+    /**
+     * Генерирует по одному документу на каждую строку NDJSON или CSV из тела запроса
+     */
+    @PostMapping("/generate-batch")
+    public ResponseEntity<?> generateDocumentsBatch(
+            HttpServletRequest request,
+            @RequestParam("templateId") Long templateId,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "format", required = false) String format) {
+
+        User user;
+        try {
+            user = getCurrentUser(request);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+
+        Optional<Template> templateOpt = templateService.getTemplateById(templateId);
+        if (templateOpt.isEmpty()) {
+            return ResponseEntity.status(404).body("Template not found");
+        }
+        Template template = templateOpt.get();
+        if (!template.getUser().getId().equals(user.getId())) {
+            return ResponseEntity.status(403).body("Access denied");
+        }
+
+        String baseName = name != null && !name.trim().isEmpty() ? name : template.getName();
+        DataRowReader.Format rowFormat = DataRowReader.detectFormat(request.getContentType(), format);
+
+        try (DataRowReader rows = new DataRowReader(request.getInputStream(), rowFormat)) {
+            BatchGenerationResult result = documentService.generateDocuments(baseName, template, user, rows);
+            return ResponseEntity.ok(result);
+        } catch (IOException | UncheckedIOException e) {
+            // Оборванное тело запроса или файл, который не удалось разобрать (CSV, XLSX)
+            return ResponseEntity.badRequest().body("Error reading batch data: " + e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").body("Rendering is overloaded");
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(500).body("Error generating documents: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Слияние: один DOCX, PDF или TXT из шаблона и строк NDJSON или CSV из тела запроса.
+     * Документы не сохраняются, результат пишется прямо в ответ по мере чтения строк.
+     * В DOCX каждая строка - свой раздел; колонтитулы с переменными заполняются данными своей строки.
+     * 503 возможен только до начала ответа
+     */
+    @PostMapping("/merge")
+    public ResponseEntity<?> mergeDocuments(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            @RequestParam("templateId") Long templateId,
+            @RequestParam("output") String output,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "format", required = false) String format) {
+        User user;
+        try {
+            user = getCurrentUser(request);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+
+        Optional<Template> templateOpt = templateService.getTemplateById(templateId);
+        if (templateOpt.isEmpty()) {
+            return ResponseEntity.status(404).body("Template not found");
+        }
+        Template template = templateOpt.get();
+        if (!template.getUser().getId().equals(user.getId())) {
+            return ResponseEntity.status(403).body("Access denied");
+        }
+
+        ExportFormat outputFormat;
+        try {
+            outputFormat = ExportFormat.fromString(output);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        DataRowReader.Format rowFormat = DataRowReader.detectFormat(request.getContentType(), format);
+
+        try (DataRowReader reader = new DataRowReader(request.getInputStream(), rowFormat)) {
+            MailMergeService.Rows rows = mailMergeService.rows(reader);
+            if (!rows.hasNext()) {
+                return ResponseEntity.badRequest().body("No valid data rows");
+            }
+
+            String fileName = (name != null && !name.trim().isEmpty() ? name : template.getName())
+                    + "." + outputFormat.getExtension();
+            response.setStatus(200);
+            response.setContentType(outputFormat.getContentType());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+            mailMergeService.merge(template, outputFormat, rows, response.getOutputStream());
+            return null;
+        } catch (RejectedExecutionException e) {
+            // Слияние не взято в работу, в ответ ничего не записано
+            response.reset();
+            return ResponseEntity.status(503).header("Retry-After", "5").body("Rendering is overloaded");
+        } catch (IllegalArgumentException e) {
+            if (response.isCommitted()) {
+                return null;
+            }
+            // Отказ до записи в ответ
+            response.reset();
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            if (!response.isCommitted()) {
+                response.reset();
+                return ResponseEntity.status(500).body("Error merging documents: " + e.getMessage());
+            }
+            // Ответ уже начат - клиент получит оборванный файл
+            return null;
+        }
+    }
+
+    /**
+     * Текст документа пишется прямо в ответ; клиентам с Accept-Encoding: gzip - сжатым
+     */
     @GetMapping("/{id}/export")
-    public ResponseEntity<String> exportDocument(
+    public ResponseEntity<StreamingResponseBody> exportDocument(
             HttpServletRequest request,
             @PathVariable Long id) {
 
@@ -81,10 +271,29 @@ public class DocumentController {
             return ResponseEntity.status(403).build();
         }
 
-        return ResponseEntity.ok(document.getGeneratedContent());
+        // Текст получаем в потоке запроса: ленивый документ рендерится, пока открыта сессия
+        String text = documentExportService.getText(document);
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = documentExportService.shouldGzipText(text,
+                acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip"));
+
+        StreamingResponseBody body = outputStream -> documentExportService.writeText(text, outputStream, gzip);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     private User getCurrentUser(HttpServletRequest request) {
+        User tokenUser = TokenAuthenticationFilter.currentUser(request);
+        if (tokenUser != null) {
+            return tokenUser;
+        }
+
         jakarta.servlet.http.HttpSession session = request.getSession(false);
         if (session == null) {
             throw new RuntimeException("Not authenticated");
@@ -123,7 +332,11 @@ public class DocumentController {
     }
 
     @GetMapping("/{id}/export-docx")
-    public ResponseEntity<byte[]> exportDocumentToDocx(@PathVariable Long id, HttpServletRequest request) {
+    public ResponseEntity<?> exportDocumentToDocx(
+            @PathVariable Long id,
+            @RequestParam(value = "engine", required = false) String engine,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         try {
             User user = getCurrentUser(request);
             Document document = documentService.getDocumentById(id)
@@ -133,38 +346,21 @@ public class DocumentController {
                 return ResponseEntity.status(403).build();
             }
 
-            Template template = document.getTemplate();
-            Map<String, String> data = document.getData();
-
-            byte[] docxContent;
-
-            // Если есть сохраненный DOCX файл, используем его как основу
-            if (template.getDocxFileContent() != null) {
-                // Создаем временный файл из BLOB
-                MultipartFile templateFile = new InMemoryMultipartFile(
-                        template.getOriginalFileName(),
-                        "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
-                        template.getDocxFileContent()
-                );
-
-                docxContent = fileProcessingService.generateDocxFromTemplate(templateFile, data);
-            } else {
-                // Используем текстовый шаблон
-                docxContent = fileProcessingService.generateDocxFromTextTemplate(template.getContent(), data);
-            }
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
-                    .header("Content-Disposition", "attachment; filename=\"" + document.getName() + ".docx\"")
-                    .body(docxContent);
+            DocxRenderEngine renderEngine = DocxRenderEngine.fromString(
+                    engine, fileProcessingService.getDefaultDocxEngine());
+            return toFileResponse(documentExportService.export(document, ExportFormat.DOCX, renderEngine),
+                    request, response);
 
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").build();
         } catch (Exception e) {
             return ResponseEntity.status(500).build();
         }
     }
 
     @GetMapping("/{id}/export-pdf")
-    public ResponseEntity<byte[]> exportDocumentToPdf(@PathVariable Long id, HttpServletRequest request) {
+    public ResponseEntity<?> exportDocumentToPdf(@PathVariable Long id, HttpServletRequest request,
+                                                 HttpServletResponse response) {
         try {
             User user = getCurrentUser(request);
             Document document = documentService.getDocumentById(id)
@@ -176,15 +372,185 @@ public class DocumentController {
             }
 
             // Генерируем PDF из сгенерированного контента
-            byte[] pdfContent = fileProcessingService.generatePdfDocument(document.getGeneratedContent());
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/pdf")
-                    .header("Content-Disposition", "attachment; filename=\"" + document.getName() + ".pdf\"")
-                    .body(pdfContent);
+            return toFileResponse(documentExportService.export(document, ExportFormat.PDF, null), request, response);
 
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").build();
         } catch (Exception e) {
             return ResponseEntity.status(500).build();
         }
     }
+
+    /**
+     * Архив документов по списку id или фильтру. Пишется прямо в ответ по мере рендеринга,
+     * поэтому размер архива не ограничен памятью, а время - таймаутом асинхронных запросов
+     */
+    @PostMapping("/export-zip")
+    public ResponseEntity<?> exportDocumentsToZip(
+            @RequestBody ZipExportRequest exportRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        User user;
+        try {
+            user = getCurrentUser(request);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+
+        ExportFormat format;
+        DocxRenderEngine engine;
+        List<ZipExportService.Item> items;
+        try {
+            format = ExportFormat.fromString(exportRequest.getFormat());
+            engine = DocxRenderEngine.fromString(exportRequest.getEngine(), fileProcessingService.getDefaultDocxEngine());
+            items = zipExportService.resolve(user, exportRequest);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        // Хотя бы один id чужой или не существует
+        if (exportRequest.getIds() != null && items.size() != new HashSet<>(exportRequest.getIds()).size()) {
+            return ResponseEntity.status(403).body("Access denied");
+        }
+
+        response.setStatus(200);
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"documents.zip\"");
+        try {
+            zipExportService.writeZip(items, format, engine, response.getOutputStream());
+        } catch (IOException e) {
+            // Ответ уже начат - клиент получит оборванный архив
+        }
+        return null;
+    }
+
+    /**
+     * Ставит экспорт в очередь и сразу возвращает 202 с id задачи
+     */
+    @PostMapping("/{id}/export-jobs")
+    public ResponseEntity<?> submitExportJob(
+            @PathVariable Long id,
+            @RequestParam("format") String format,
+            @RequestParam(value = "engine", required = false) String engine,
+            HttpServletRequest request) {
+        try {
+            User user = getCurrentUser(request);
+            Document document = documentService.getDocumentById(id)
+                    .orElseThrow(() -> new RuntimeException("Document not found"));
+
+            if (!document.getUser().getId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+
+            ExportFormat exportFormat = ExportFormat.fromString(format);
+            DocxRenderEngine renderEngine = DocxRenderEngine.fromString(
+                    engine, fileProcessingService.getDefaultDocxEngine());
+
+            ExportJob job = exportJobService.submit(id, user.getId(), exportFormat, renderEngine);
+            return ResponseEntity.accepted()
+                    .header("Location", "/api/documents/export-jobs/" + job.getId())
+                    .body(convertToDTO(job));
+
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503)
+                    .header("Retry-After", "5")
+                    .body("Export queue is full, try again later");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+    }
+
+    @GetMapping("/export-jobs/{jobId}")
+    public ResponseEntity<?> getExportJob(@PathVariable String jobId, HttpServletRequest request) {
+        try {
+            User user = getCurrentUser(request);
+            Optional<ExportJob> job = exportJobService.getJob(jobId);
+            if (job.isEmpty()) {
+                return ResponseEntity.status(404).body("Export job not found");
+            }
+            if (!job.get().getUserId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+            return ResponseEntity.ok(convertToDTO(job.get()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+    }
+
+    @GetMapping("/export-jobs/{jobId}/download")
+    public ResponseEntity<?> downloadExportJob(@PathVariable String jobId, HttpServletRequest request,
+                                               HttpServletResponse response) {
+        try {
+            User user = getCurrentUser(request);
+            Optional<ExportJob> job = exportJobService.getJob(jobId);
+            if (job.isEmpty()) {
+                return ResponseEntity.status(404).body("Export job not found");
+            }
+            if (!job.get().getUserId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+            if (!DocumentStatus.EXPORTED.equals(job.get().getStatus())) {
+                return ResponseEntity.status(409).body(convertToDTO(job.get()));
+            }
+            return toFileResponse(job.get().getResult(), request, response);
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body("Error reading exported file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+    }
+
+    /**
+     * Отдает файл из хранилища артефактов. Поддерживаются ETag и Range; запрос без Range
+     * передается через sendfile Tomcat, без копирования содержимого через heap
+     */
+    private ResponseEntity<?> toFileResponse(ExportedFile file, HttpServletRequest request,
+                                             HttpServletResponse response) throws IOException {
+        if (!Files.exists(file.getPath())) {
+            return ResponseEntity.status(410).body("Exported file is no longer available");
+        }
+
+        String etag = "\"" + file.getContentHash() + "\"";
+        String contentDisposition = "attachment; filename=\"" + file.getFileName() + "\"";
+
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return null;
+        }
+
+        boolean sendfileSupported = Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"));
+        if (sendfileSupported && request.getHeader(HttpHeaders.RANGE) == null) {
+            long length = Files.size(file.getPath());
+            response.setStatus(200);
+            response.setContentType(file.getContentType());
+            response.setContentLengthLong(length);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            request.setAttribute("org.apache.tomcat.sendfile.filename", file.getPath().toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", length);
+            return null;
+        }
+
+        // Spring сам обработает заголовок Range для Resource
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, file.getContentType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(etag)
+                .body(new FileSystemResource(file.getPath()));
+    }
+
+    private ExportJobDTO convertToDTO(ExportJob job) {
+        return new ExportJobDTO(
+                job.getId(),
+                job.getDocumentId(),
+                job.getFormat().name(),
+                job.getStatus(),
+                job.getError(),
+                job.getCreatedAt(),
+                job.getFinishedAt()
+        );
+    }
 }
\ No newline at end of file
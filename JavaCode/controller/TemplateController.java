@@ -1,22 +1,32 @@
 package com.documentgenerationservice.controller;
 
+import com.documentgenerationservice.config.TokenAuthenticationFilter;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
 import com.documentgenerationservice.dto.TemplateDTO;
+import com.documentgenerationservice.dto.TemplateSummaryDTO;
 import com.documentgenerationservice.model.Template;
 import com.documentgenerationservice.model.User;
-import com.documentgenerationservice.service.FileProcessingService;
 import com.documentgenerationservice.service.TemplateService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/templates")
@@ -25,26 +35,47 @@ public class TemplateController {
 
     private static final Logger logger = LoggerFactory.getLogger(TemplateController.class);
 
-    @Autowired
-    private TemplateService templateService;
+    private static final String DOCX_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
 
     @Autowired
-    private FileProcessingService fileProcessingService;
+    private TemplateService templateService;
 
     @GetMapping
-    public ResponseEntity<?> getUserTemplates(HttpServletRequest request) {
+    public ResponseEntity<?> getUserTemplates(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletRequest request) {
+        User user;
         try {
-            User user = getCurrentUser(request);
+            user = getCurrentUser(request);
             logger.info("Fetching templates for user: {}", user.getUsername());
-
-            List<TemplateDTO> templates = templateService.getUserTemplatesDTO(user);
-            logger.info("Found {} templates for user: {}", templates.size(), user.getUsername());
-
-            return ResponseEntity.ok(templates);
         } catch (RuntimeException e) {
             logger.error("Authentication error: {}", e.getMessage());
             return ResponseEntity.status(401).body("Not authenticated");
         }
+
+        ListQuery query = new ListQuery();
+        query.setPage(page);
+        query.setSize(size);
+        query.setSort(sort);
+        query.setCursor(cursor);
+        query.setName(name);
+        query.setFrom(from);
+        query.setTo(to);
+
+        try {
+            PageResponse<TemplateSummaryDTO> templates = templateService.getUserTemplatesPage(user, query);
+            logger.info("Found {} templates for user: {}", templates.getContent().size(), user.getUsername());
+            return ResponseEntity.ok(templates);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping
@@ -108,6 +139,11 @@ public class TemplateController {
     }
 
     private User getCurrentUser(HttpServletRequest request) {
+        User tokenUser = TokenAuthenticationFilter.currentUser(request);
+        if (tokenUser != null) {
+            return tokenUser;
+        }
+
         HttpSession session = request.getSession(false);
         if (session == null) {
             throw new RuntimeException("Not authenticated");
@@ -122,17 +158,60 @@ public class TemplateController {
     }
 
     private TemplateDTO convertToDTO(Template template) {
-        return new TemplateDTO(
-                template.getId(),
-                template.getName(),
-                template.getDescription(),
-                template.getContent(),
-                template.getFields(),
-                template.getCreatedAt(),
-                template.getUpdatedAt(),
-                template.getOriginalFileName(),
-                template.getDocxFileContent()
-        );
+        return templateService.getTemplateDTO(template);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getTemplate(@PathVariable Long id, HttpServletRequest request) {
+        try {
+            User user = getCurrentUser(request);
+
+            Optional<Template> templateOpt = templateService.getTemplateById(id);
+            if (templateOpt.isEmpty()) {
+                return ResponseEntity.status(404).body("Template not found");
+            }
+            if (!templateOpt.get().getUser().getId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+
+            return ResponseEntity.ok(convertToDTO(templateOpt.get()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
+    }
+
+    /**
+     * Отдает оригинальный DOCX шаблона отдельным запросом, а не внутри JSON
+     */
+    @GetMapping("/{id}/file")
+    public ResponseEntity<?> downloadTemplateFile(@PathVariable Long id, HttpServletRequest request) {
+        try {
+            User user = getCurrentUser(request);
+
+            Optional<Template> templateOpt = templateService.getTemplateById(id);
+            if (templateOpt.isEmpty()) {
+                return ResponseEntity.status(404).body("Template not found");
+            }
+            Template template = templateOpt.get();
+            if (!template.getUser().getId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+
+            Optional<Path> file = templateService.getTemplateFile(template);
+            if (file.isEmpty()) {
+                return ResponseEntity.status(404).body("Template has no DOCX file");
+            }
+
+            String fileName = template.getOriginalFileName() != null
+                    ? template.getOriginalFileName()
+                    : template.getName() + ".docx";
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(DOCX_CONTENT_TYPE))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                    .body(new FileSystemResource(file.get()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body("Not authenticated");
+        }
     }
 
     @PutMapping("/{id}")
@@ -144,17 +223,22 @@ public class TemplateController {
         try {
             User user = getCurrentUser(request);
 
+            // Проверяем, принадлежит ли шаблон текущему пользователю, до изменения
+            Optional<Template> templateOpt = templateService.getTemplateById(id);
+            if (templateOpt.isEmpty()) {
+                return ResponseEntity.status(404).body("Template not found");
+            }
+            if (!templateOpt.get().getUser().getId().equals(user.getId())) {
+                return ResponseEntity.status(403).body("Access denied");
+            }
+
             String name = requestBody.get("name");
             String content = requestBody.get("content");
 
-            Map<String, String> fields = templateService.extractFieldsFromContent(content);
+            // Без content поля не меняются (переименование)
+            Map<String, String> fields = content != null ? templateService.extractFieldsFromContent(content) : null;
             Template updatedTemplate = templateService.updateTemplate(id, name, content, fields);
 
-            // Проверяем, принадлежит ли шаблон текущему пользователю
-            if (!updatedTemplate.getUser().getId().equals(user.getId())) {
-                return ResponseEntity.status(403).body("Access denied");
-            }
-
             TemplateDTO templateDTO = convertToDTO(updatedTemplate);
             return ResponseEntity.ok(templateDTO);
 
@@ -206,16 +290,16 @@ public class TemplateController {
                 return ResponseEntity.badRequest().body("Only DOCX files are allowed");
             }
 
-            // Извлекаем текст для предпросмотра
-            String content = fileProcessingService.extractTextFromDocx(file);
-            Map<String, String> fields = fileProcessingService.extractFieldsFromDocxContent(content);
-
-            // Сохраняем шаблон с оригинальным DOCX файлом
-            Template template = templateService.createTemplateFromDocx(name, file, user, fields);
+            // Один разбор файла: текст для предпросмотра, поля и индекс переменных
+            Template template = templateService.createTemplateFromDocx(name, file, user);
             TemplateDTO templateDTO = convertToDTO(template);
 
             return ResponseEntity.ok(templateDTO);
 
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503)
+                    .header("Retry-After", "5")
+                    .body("Server is busy processing documents, try again later");
         } catch (RuntimeException e) {
             return ResponseEntity.status(401).body("Not authenticated");
         } catch (Exception e) {
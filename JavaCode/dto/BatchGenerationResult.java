@@ -0,0 +1,62 @@
+package com.documentgenerationservice.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchGenerationResult {
+    private int total;
+    private int generated;
+    private int failed;
+    private List<RowResult> rows = new ArrayList<>();
+
+    public static class RowResult {
+        private int row;
+        private Long documentId;
+        private String error;
+
+        public RowResult() {}
+
+        public RowResult(int row, Long documentId, String error) {
+            this.row = row;
+            this.documentId = documentId;
+            this.error = error;
+        }
+
+        // Геттеры и сеттеры
+        public int getRow() { return row; }
+        public void setRow(int row) { this.row = row; }
+
+        public Long getDocumentId() { return documentId; }
+        public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+
+    public BatchGenerationResult() {}
+
+    public void addSuccess(int row, Long documentId) {
+        rows.add(new RowResult(row, documentId, null));
+        total++;
+        generated++;
+    }
+
+    public void addFailure(int row, String error) {
+        rows.add(new RowResult(row, null, error));
+        total++;
+        failed++;
+    }
+
+    // Геттеры и сеттеры
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+
+    public int getGenerated() { return generated; }
+    public void setGenerated(int generated) { this.generated = generated; }
+
+    public int getFailed() { return failed; }
+    public void setFailed(int failed) { this.failed = failed; }
+
+    public List<RowResult> getRows() { return rows; }
+    public void setRows(List<RowResult> rows) { this.rows = rows; }
+}
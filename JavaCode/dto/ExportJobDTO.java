@@ -0,0 +1,48 @@
+package com.documentgenerationservice.dto;
+
+import java.time.LocalDateTime;
+
+public class ExportJobDTO {
+    private String jobId;
+    private Long documentId;
+    private String format;
+    private String status;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    public ExportJobDTO() {}
+
+    public ExportJobDTO(String jobId, Long documentId, String format, String status, String error,
+                        LocalDateTime createdAt, LocalDateTime finishedAt) {
+        this.jobId = jobId;
+        this.documentId = documentId;
+        this.format = format;
+        this.status = status;
+        this.error = error;
+        this.createdAt = createdAt;
+        this.finishedAt = finishedAt;
+    }
+
+    // Геттеры и сеттеры
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+}
@@ -0,0 +1,75 @@
+package com.documentgenerationservice.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Параметры постраничного списка: фильтры, сортировка и страница или курсор
+ */
+public class ListQuery {
+    public static final int DEFAULT_SIZE = 50;
+    public static final int MAX_SIZE = 200;
+
+    private String status;
+    private Long templateId;
+    private String name;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String sortField = "createdAt";
+    private boolean ascending;
+    private int page;
+    private int size = DEFAULT_SIZE;
+    private String cursor;
+
+    public ListQuery() {}
+
+    /**
+     * Разбирает сортировку вида "createdAt,desc"
+     */
+    public void setSort(String sort) {
+        if (sort == null || sort.trim().isEmpty()) {
+            return;
+        }
+        String[] parts = sort.split(",");
+        this.sortField = parts[0].trim();
+        this.ascending = parts.length > 1 && "asc".equalsIgnoreCase(parts[1].trim());
+    }
+
+    public boolean isCursorMode() {
+        return cursor != null && !cursor.isEmpty();
+    }
+
+    /**
+     * Курсор поддерживается только для сортировки по умолчанию (createdAt по убыванию)
+     */
+    public boolean isKeysetSort() {
+        return "createdAt".equals(sortField) && !ascending;
+    }
+
+    // Геттеры и сеттеры
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Long getTemplateId() { return templateId; }
+    public void setTemplateId(Long templateId) { this.templateId = templateId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public LocalDateTime getFrom() { return from; }
+    public void setFrom(LocalDateTime from) { this.from = from; }
+
+    public LocalDateTime getTo() { return to; }
+    public void setTo(LocalDateTime to) { this.to = to; }
+
+    public String getSortField() { return sortField; }
+    public boolean isAscending() { return ascending; }
+
+    public int getPage() { return page; }
+    public void setPage(int page) { this.page = Math.max(page, 0); }
+
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = Math.min(Math.max(size, 1), MAX_SIZE); }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+}
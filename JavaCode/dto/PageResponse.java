@@ -0,0 +1,46 @@
+package com.documentgenerationservice.dto;
+
+import java.util.List;
+
+/**
+ * Страница списка. В режиме offset заполнены page и totalElements,
+ * в режиме курсора - nextCursor для запроса следующей страницы.
+ */
+public class PageResponse<T> {
+    private List<T> content;
+    private Integer page;
+    private int size;
+    private Long totalElements;
+    private boolean hasNext;
+    private String nextCursor;
+
+    public PageResponse() {}
+
+    public PageResponse(List<T> content, Integer page, int size, Long totalElements, boolean hasNext, String nextCursor) {
+        this.content = content;
+        this.page = page;
+        this.size = size;
+        this.totalElements = totalElements;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    // Геттеры и сеттеры
+    public List<T> getContent() { return content; }
+    public void setContent(List<T> content) { this.content = content; }
+
+    public Integer getPage() { return page; }
+    public void setPage(Integer page) { this.page = page; }
+
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+
+    public Long getTotalElements() { return totalElements; }
+    public void setTotalElements(Long totalElements) { this.totalElements = totalElements; }
+
+    public boolean isHasNext() { return hasNext; }
+    public void setHasNext(boolean hasNext) { this.hasNext = hasNext; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -12,14 +12,14 @@ public class TemplateDTO {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private String originalFileName;
-    private byte[] docxFileContent; // или String docxFileContentBase64 если нужна кодировка base64
+    private boolean hasDocxFile; // сам файл отдается через GET /api/templates/{id}/file
 
     // Конструкторы
     public TemplateDTO() {}
 
     public TemplateDTO(Long id, String name, String description, String content,
                        Map<String, String> fields, LocalDateTime createdAt, LocalDateTime updatedAt,
-                       String originalFileName, byte[] docxFileContent) {
+                       String originalFileName, boolean hasDocxFile) {
         this.id = id;
         this.name = name;
         this.description = description;
@@ -28,7 +28,7 @@ public class TemplateDTO {
         this.createdAt = createdAt;
         this.updatedAt = updatedAt;
         this.originalFileName = originalFileName;
-        this.docxFileContent = docxFileContent;
+        this.hasDocxFile = hasDocxFile;
     }
 
     // Геттеры и сеттеры
@@ -56,6 +56,6 @@ public class TemplateDTO {
     public String getOriginalFileName() { return originalFileName; }
     public void setOriginalFileName(String originalFileName) { this.originalFileName = originalFileName; }
 
-    public byte[] getDocxFileContent() { return docxFileContent; }
-    public void setDocxFileContent(byte[] docxFileContent) { this.docxFileContent = docxFileContent; }
+    public boolean isHasDocxFile() { return hasDocxFile; }
+    public void setHasDocxFile(boolean hasDocxFile) { this.hasDocxFile = hasDocxFile; }
 }
\ No newline at end of file
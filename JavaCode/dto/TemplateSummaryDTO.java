@@ -0,0 +1,56 @@
+package com.documentgenerationservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Облегченное представление шаблона для списков: без текста шаблона и исходного DOCX
+ */
+public class TemplateSummaryDTO {
+    private Long id;
+    private String name;
+    private String description;
+    private Map<String, String> fields;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private String originalFileName;
+    private boolean hasDocxFile;
+
+    public TemplateSummaryDTO() {}
+
+    public TemplateSummaryDTO(Long id, String name, String description, LocalDateTime createdAt,
+                              LocalDateTime updatedAt, String originalFileName, Boolean hasDocxFile) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.originalFileName = originalFileName;
+        this.hasDocxFile = Boolean.TRUE.equals(hasDocxFile);
+    }
+
+    // Геттеры и сеттеры
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+
+    public Map<String, String> getFields() { return fields; }
+    public void setFields(Map<String, String> fields) { this.fields = fields; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public String getOriginalFileName() { return originalFileName; }
+    public void setOriginalFileName(String originalFileName) { this.originalFileName = originalFileName; }
+
+    public boolean isHasDocxFile() { return hasDocxFile; }
+    public void setHasDocxFile(boolean hasDocxFile) { this.hasDocxFile = hasDocxFile; }
+}
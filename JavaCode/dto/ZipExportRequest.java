@@ -0,0 +1,59 @@
+package com.documentgenerationservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запрос архива документов: список id (в порядке архива) или фильтр как у списка документов
+ */
+public class ZipExportRequest {
+    private List<Long> ids;
+    private String format;
+    private String engine;
+    private String status;
+    private Long templateId;
+    private String name;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    public ZipExportRequest() {}
+
+    /**
+     * Фильтр списка документов; используется, когда ids не заданы
+     */
+    public ListQuery toListQuery() {
+        ListQuery query = new ListQuery();
+        query.setStatus(status);
+        query.setTemplateId(templateId);
+        query.setName(name);
+        query.setFrom(from);
+        query.setTo(to);
+        query.setSize(ListQuery.MAX_SIZE);
+        return query;
+    }
+
+    // Геттеры и сеттеры
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public String getEngine() { return engine; }
+    public void setEngine(String engine) { this.engine = engine; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Long getTemplateId() { return templateId; }
+    public void setTemplateId(Long templateId) { this.templateId = templateId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public LocalDateTime getFrom() { return from; }
+    public void setFrom(LocalDateTime from) { this.from = from; }
+
+    public LocalDateTime getTo() { return to; }
+    public void setTo(LocalDateTime to) { this.to = to; }
+}
@@ -1,12 +1,22 @@
 package com.documentgenerationservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 import java.util.Map;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_documents_user_request_key", columnNames = {"user_id", "request_key"})
+}, indexes = {
+        @Index(name = "idx_documents_user_created", columnList = "user_id, createdAt, id"),
+        @Index(name = "idx_documents_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_documents_template", columnList = "template_id"),
+        @Index(name = "idx_documents_template_version", columnList = "template_version_id")
+})
 public class Document {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -22,17 +32,37 @@ public class Document {
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
     private User user;
 
-    @ElementCollection
+    // Все поля одним JSON-столбцом (jsonb в PostgreSQL): одна вставка и одно чтение вместо строки на поле
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "data_json")
+    private Map<String, String> data;
+
+    // Прежнее хранение, строка document_data на поле. Читается getData(), пока документ не перенесен
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "document_data", joinColumns = @JoinColumn(name = "document_id"))
     @MapKeyColumn(name = "field_name")
     @Column(name = "field_value", columnDefinition = "TEXT")
-    private Map<String, String> data;
+    @JsonIgnore
+    private Map<String, String> legacyData;
+
+    // Версия шаблона, по которой сгенерирован документ
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "template_version_id")
+    @JsonIgnore
+    private TemplateVersion templateVersion;
 
+    // null у документов, сохраненных в ленивом режиме: текст рендерится при экспорте
     @Column(columnDefinition = "TEXT")
     private String generatedContent;
 
+    // Ключ запроса генерации (GenerationIdempotency), null вне окна повторов
+    @Column(name = "request_key", length = 64)
+    @JsonIgnore
+    private String requestKey;
+
     private String filePath;
     private String status;
     private LocalDateTime createdAt;
@@ -44,7 +74,7 @@ public class Document {
         this.name = name;
         this.template = template;
         this.user = user;
-        this.status = "GENERATED";
+        this.status = DocumentStatus.GENERATED;
         this.createdAt = LocalDateTime.now();
     }
 
@@ -58,15 +88,27 @@ public class Document {
     public Template getTemplate() { return template; }
     public void setTemplate(Template template) { this.template = template; }
 
+    public TemplateVersion getTemplateVersion() { return templateVersion; }
+    public void setTemplateVersion(TemplateVersion templateVersion) { this.templateVersion = templateVersion; }
+
     public User getUser() { return user; }
     public void setUser(User user) { this.user = user; }
 
-    public Map<String, String> getData() { return data; }
+    // Пока DocumentDataMigration не перенесла документ, поля читаются из document_data
+    public Map<String, String> getData() { return data != null ? data : legacyData; }
     public void setData(Map<String, String> data) { this.data = data; }
 
+    public boolean hasDataJson() { return data != null; }
+
+    public Map<String, String> getLegacyData() { return legacyData; }
+    public void setLegacyData(Map<String, String> legacyData) { this.legacyData = legacyData; }
+
     public String getGeneratedContent() { return generatedContent; }
     public void setGeneratedContent(String generatedContent) { this.generatedContent = generatedContent; }
 
+    public String getRequestKey() { return requestKey; }
+    public void setRequestKey(String requestKey) { this.requestKey = requestKey; }
+
     public String getFilePath() { return filePath; }
     public void setFilePath(String filePath) { this.filePath = filePath; }
 
@@ -0,0 +1,16 @@
+package com.documentgenerationservice.model;
+
+/**
+ * Возможные значения Document.status
+ */
+public final class DocumentStatus {
+    public static final String GENERATED = "GENERATED";
+
+    // Статусы асинхронного экспорта
+    public static final String EXPORT_QUEUED = "EXPORT_QUEUED";
+    public static final String EXPORTING = "EXPORTING";
+    public static final String EXPORTED = "EXPORTED";
+    public static final String EXPORT_FAILED = "EXPORT_FAILED";
+
+    private DocumentStatus() {}
+}
@@ -0,0 +1,47 @@
+package com.documentgenerationservice.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Учет DOCX-файла в хранилище DocxBlobStore: ключ - SHA-256 содержимого,
+ * refCount - число шаблонов, которые на него ссылаются
+ */
+@Entity
+@Table(name = "docx_blobs")
+public class DocxBlob {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    private LocalDateTime createdAt;
+
+    // Конструкторы
+    public DocxBlob() {}
+
+    public DocxBlob(String hash, long size) {
+        this.hash = hash;
+        this.size = size;
+        this.refCount = 1;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Геттеры и сеттеры
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public int getRefCount() { return refCount; }
+    public void setRefCount(int refCount) { this.refCount = refCount; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
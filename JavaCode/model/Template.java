@@ -8,7 +8,9 @@ import java.time.LocalDateTime;
 import java.util.Map;
 
 @Entity
-@Table(name = "templates")
+@Table(name = "templates", indexes = {
+        @Index(name = "idx_templates_user_created", columnList = "user_id, createdAt, id")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Template {
     @Id
@@ -37,12 +39,27 @@ public class Template {
     @JsonIgnore // ВАЖНО: убрать циклическую ссылку
     private User user;
 
+    // Оригинальный DOCX хранится в DocxBlobStore, в строке шаблона - только SHA-256 содержимого
+    @Column(name = "docx_blob_hash", length = 64)
+    @JsonIgnore
+    private String docxBlobHash;
+
+    // Старое хранение DOCX в строке шаблона. Читается только DocxBlobMigration,
+    // после переноса всех шаблонов колонку можно удалить
+    @Basic(fetch = FetchType.LAZY)
     @Column(name = "docx_file_content", columnDefinition = "BYTEA")
-    private byte[] docxFileContent; // Храним оригинальный DOCX файл
+    @JsonIgnore
+    private byte[] legacyDocxFileContent;
 
     @Column(name = "original_file_name")
     private String originalFileName;
 
+    // Текущая версия (TemplateVersion). content, fields и docxBlobHash шаблона совпадают с ней;
+    // без внешнего ключа, чтобы шаблон и его версии удалялись без циклической зависимости
+    @Column(name = "current_version_id")
+    @JsonIgnore
+    private Long currentVersionId;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -90,14 +107,25 @@ public class Template {
 
     public void setOriginalFileName(String originalFilename) { this.originalFileName = originalFilename; }
 
-    public byte[] getDocxFileContent() {
-        return docxFileContent;
+    public String getDocxBlobHash() {
+        return docxBlobHash;
     }
 
-    public void setDocxFileContent(byte[] docxFileContent) {
-        this.docxFileContent = docxFileContent;
+    public void setDocxBlobHash(String docxBlobHash) {
+        this.docxBlobHash = docxBlobHash;
+        this.updatedAt = LocalDateTime.now();
     }
 
+    public boolean hasDocxFile() {
+        return docxBlobHash != null;
+    }
+
+    public Long getCurrentVersionId() { return currentVersionId; }
+    public void setCurrentVersionId(Long currentVersionId) { this.currentVersionId = currentVersionId; }
+
+    public byte[] getLegacyDocxFileContent() { return legacyDocxFileContent; }
+    public void setLegacyDocxFileContent(byte[] legacyDocxFileContent) { this.legacyDocxFileContent = legacyDocxFileContent; }
+
     public String getOriginalFileName() {
         return originalFileName;
     }
@@ -0,0 +1,75 @@
+package com.documentgenerationservice.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок шаблона. Изменение шаблона создает новую версию, документы ссылаются
+ * на версию, по которой сгенерированы, поэтому кэши и артефакты по id версии не устаревают.
+ */
+@Entity
+@Immutable
+@Table(name = "template_versions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_template_versions_number", columnNames = {"template_id", "number"})
+})
+public class TemplateVersion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "template_id", nullable = false)
+    private Template template;
+
+    @Column(nullable = false)
+    private int number;
+
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "fields_json")
+    private Map<String, String> fields;
+
+    @Column(name = "docx_blob_hash", length = 64)
+    private String docxBlobHash;
+
+    private LocalDateTime createdAt;
+
+    // Конструкторы
+    protected TemplateVersion() {}
+
+    public TemplateVersion(Template template, int number) {
+        this.template = template;
+        this.number = number;
+        this.content = template.getContent();
+        this.fields = template.getFields() != null ? new LinkedHashMap<>(template.getFields()) : new LinkedHashMap<>();
+        this.docxBlobHash = template.getDocxBlobHash();
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Геттеры
+    public Long getId() { return id; }
+
+    public Template getTemplate() { return template; }
+
+    public Long getTemplateId() { return template != null ? template.getId() : null; }
+
+    public int getNumber() { return number; }
+
+    public String getContent() { return content; }
+
+    public Map<String, String> getFields() { return fields; }
+
+    public String getDocxBlobHash() { return docxBlobHash; }
+
+    public boolean hasDocxFile() { return docxBlobHash != null; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
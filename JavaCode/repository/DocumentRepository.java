@@ -1,14 +1,72 @@
 package com.documentgenerationservice.repository;
 
 import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.TemplateVersion;
 import com.documentgenerationservice.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface DocumentRepository extends JpaRepository<Document, Long> {
+public interface DocumentRepository extends JpaRepository<Document, Long>, DocumentRepositoryCustom {
     List<Document> findByUser(User user);
     List<Document> findByUserId(Long userId);
+    Optional<Document> findByUserIdAndRequestKey(Long userId, String requestKey);
+
+    /**
+     * Освобождает ключ запроса документа после окна повторов
+     */
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.requestKey = null where d.id = :id")
+    int clearRequestKey(@Param("id") Long id);
+
+    /**
+     * Документы пользователя из списка, в любом порядке; чужих и несуществующих в результате нет
+     */
+    @Query("select d from Document d where d.user.id = :userId and d.id in :ids")
+    List<Document> findByUserIdAndIdIn(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Query("select d.templateVersion.id from Document d where d.id = :id")
+    Long findTemplateVersionIdById(@Param("id") Long id);
+
+    /**
+     * Документы, созданные до версий шаблонов, получают текущую версию своего шаблона
+     */
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.templateVersion = :version where d.template.id = :templateId"
+            + " and d.templateVersion is null")
+    int assignTemplateVersion(@Param("templateId") Long templateId, @Param("version") TemplateVersion version);
+
+    /**
+     * Документы с сохраненным текстом - кандидаты на перевод в ленивый режим
+     */
+    @Query("select d.id from Document d where d.id > :afterId and d.generatedContent is not null order by d.id")
+    List<Long> findIdsWithContent(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Документы, поля которых еще лежат в таблице document_data, по возрастанию id
+     */
+    @Query("select d.id from Document d where d.id > :afterId and d.data is null"
+            + " and d.legacyData is not empty order by d.id")
+    List<Long> findIdsWithLegacyData(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.status = :status where d.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.filePath = :filePath where d.id = :id")
+    int updateFilePath(@Param("id") Long id, @Param("filePath") String filePath);
 }
\ No newline at end of file
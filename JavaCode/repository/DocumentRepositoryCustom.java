@@ -0,0 +1,9 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.dto.DocumentDTO;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+
+public interface DocumentRepositoryCustom {
+    PageResponse<DocumentDTO> findPageByUserId(Long userId, ListQuery query);
+}
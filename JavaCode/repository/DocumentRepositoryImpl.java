@@ -0,0 +1,46 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.dto.DocumentDTO;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.Map;
+
+public class DocumentRepositoryImpl implements DocumentRepositoryCustom {
+
+    private static final Map<String, String> SORT_FIELDS = Map.of(
+            "createdAt", "d.createdAt",
+            "name", "d.name",
+            "status", "d.status",
+            "templateName", "t.name"
+    );
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Страница документов одним запросом с join шаблона сразу в DTO
+     */
+    @Override
+    public PageResponse<DocumentDTO> findPageByUserId(Long userId, ListQuery query) {
+        PagedQuery<DocumentDTO> pagedQuery = new PagedQuery<>(entityManager,
+                "select new com.documentgenerationservice.dto.DocumentDTO(" +
+                        "d.id, d.name, coalesce(t.name, 'No template'), d.status, d.createdAt)",
+                " from Document d left join d.template t",
+                "d",
+                DocumentDTO.class);
+
+        pagedQuery.where("d.user.id = :userId", "userId", userId)
+                .whereIfPresent("d.status = :status", "status", query.getStatus())
+                .whereIfPresent("t.id = :templateId", "templateId", query.getTemplateId())
+                .whereIfPresent("d.createdAt >= :from", "from", query.getFrom())
+                .whereIfPresent("d.createdAt < :to", "to", query.getTo());
+        if (query.getName() != null && !query.getName().trim().isEmpty()) {
+            pagedQuery.where("lower(d.name) like :name", "name", "%" + query.getName().trim().toLowerCase() + "%");
+        }
+
+        return pagedQuery.fetch(query, SORT_FIELDS, document -> new KeysetCursor(document.getCreatedAt(), document.getId()));
+    }
+}
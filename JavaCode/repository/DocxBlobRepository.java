@@ -0,0 +1,36 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.model.DocxBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DocxBlobRepository extends JpaRepository<DocxBlob, String> {
+
+    @Modifying
+    @Query("update DocxBlob b set b.refCount = b.refCount + 1 where b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("update DocxBlob b set b.refCount = b.refCount - 1 where b.hash = :hash and b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    /**
+     * Блокирует запись без ссылок до конца транзакции, чтобы параллельная загрузка
+     * того же файла дождалась удаления и создала запись заново
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from DocxBlob b where b.hash = :hash and b.refCount = 0")
+    Optional<DocxBlob> findUnreferencedForUpdate(@Param("hash") String hash);
+
+    @Query("select b.hash from DocxBlob b where b.refCount = 0")
+    List<String> findUnreferencedHashes();
+}
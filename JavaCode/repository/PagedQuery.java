@@ -0,0 +1,96 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Собирает JPQL-запрос страницы с фильтрами, сортировкой из белого списка
+ * и выборкой по курсору (createdAt, id) вместо OFFSET
+ */
+final class PagedQuery<T> {
+
+    private final EntityManager entityManager;
+    private final String select;
+    private final String from;
+    private final String alias;
+    private final Class<T> resultType;
+    private final StringBuilder where = new StringBuilder();
+    private final Map<String, Object> parameters = new HashMap<>();
+
+    PagedQuery(EntityManager entityManager, String select, String from, String alias, Class<T> resultType) {
+        this.entityManager = entityManager;
+        this.select = select;
+        this.from = from;
+        this.alias = alias;
+        this.resultType = resultType;
+    }
+
+    PagedQuery<T> where(String condition, String parameter, Object value) {
+        where.append(where.length() == 0 ? " where " : " and ").append(condition);
+        if (parameter != null) {
+            parameters.put(parameter, value);
+        }
+        return this;
+    }
+
+    PagedQuery<T> whereIfPresent(String condition, String parameter, Object value) {
+        return value != null ? where(condition, parameter, value) : this;
+    }
+
+    PageResponse<T> fetch(ListQuery query, Map<String, String> sortFields, Function<T, KeysetCursor> cursorOf) {
+        String sortPath = sortFields.get(query.getSortField());
+        if (sortPath == null) {
+            throw new IllegalArgumentException("Unsupported sort field: " + query.getSortField());
+        }
+
+        boolean cursorMode = query.isCursorMode();
+        if (cursorMode) {
+            if (!query.isKeysetSort()) {
+                throw new IllegalArgumentException("Cursor is only supported with sort=createdAt,desc");
+            }
+            KeysetCursor cursor = KeysetCursor.decode(query.getCursor());
+            where("(" + alias + ".createdAt < :cursorAt or (" + alias + ".createdAt = :cursorAt and "
+                    + alias + ".id < :cursorId))", "cursorAt", cursor.getCreatedAt());
+            parameters.put("cursorId", cursor.getId());
+        }
+
+        String direction = query.isAscending() ? "asc" : "desc";
+        TypedQuery<T> pageQuery = entityManager.createQuery(
+                select + from + where + " order by " + sortPath + " " + direction + ", " + alias + ".id " + direction,
+                resultType);
+        parameters.forEach(pageQuery::setParameter);
+        if (!cursorMode) {
+            pageQuery.setFirstResult(query.getPage() * query.getSize());
+        }
+        // Одна лишняя строка показывает, есть ли следующая страница
+        pageQuery.setMaxResults(query.getSize() + 1);
+
+        List<T> rows = new ArrayList<>(pageQuery.getResultList());
+        boolean hasNext = rows.size() > query.getSize();
+        if (hasNext) {
+            rows = new ArrayList<>(rows.subList(0, query.getSize()));
+        }
+
+        Long total = null;
+        if (!cursorMode) {
+            TypedQuery<Long> countQuery = entityManager.createQuery(
+                    "select count(" + alias + ")" + from + where, Long.class);
+            parameters.forEach(countQuery::setParameter);
+            total = countQuery.getSingleResult();
+        }
+
+        String nextCursor = hasNext && query.isKeysetSort() && !rows.isEmpty()
+                ? cursorOf.apply(rows.get(rows.size() - 1)).encode()
+                : null;
+
+        return new PageResponse<>(rows, cursorMode ? null : query.getPage(), query.getSize(), total, hasNext, nextCursor);
+    }
+}
@@ -2,13 +2,40 @@ package com.documentgenerationservice.repository;
 
 import com.documentgenerationservice.model.Template;
 import com.documentgenerationservice.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface TemplateRepository extends JpaRepository<Template, Long> {
+public interface TemplateRepository extends JpaRepository<Template, Long>, TemplateRepositoryCustom {
     List<Template> findByUser(User user);
     List<Template> findByUserId(Long userId);
+
+    /**
+     * Шаблоны, DOCX которых еще лежит в строке таблицы (для DocxBlobMigration)
+     */
+    @Query("select t.id from Template t where t.id > :afterId and t.legacyDocxFileContent is not null"
+            + " and t.docxBlobHash is null order by t.id")
+    List<Long> findIdsWithLegacyDocx(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Шаблоны без версии или с документами без версии, по возрастанию id
+     */
+    @Query("select t.id from Template t where t.id > :afterId and (t.currentVersionId is null"
+            + " or exists (select d.id from Document d where d.template = t and d.templateVersion is null))"
+            + " order by t.id")
+    List<Long> findIdsWithoutVersions(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select t.legacyDocxFileContent from Template t where t.id = :id")
+    byte[] findLegacyDocxFileContentById(@Param("id") Long id);
+
+    @Modifying
+    @Query("update Template t set t.docxBlobHash = :hash, t.legacyDocxFileContent = null where t.id = :id")
+    int moveDocxToBlob(@Param("id") Long id, @Param("hash") String hash);
 }
\ No newline at end of file
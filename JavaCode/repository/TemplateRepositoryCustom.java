@@ -0,0 +1,14 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import com.documentgenerationservice.dto.TemplateSummaryDTO;
+import com.documentgenerationservice.model.Template;
+
+import java.util.Optional;
+
+public interface TemplateRepositoryCustom {
+    PageResponse<TemplateSummaryDTO> findSummaryPageByUserId(Long userId, ListQuery query);
+
+    Optional<Template> findForUpdateById(Long id);
+}
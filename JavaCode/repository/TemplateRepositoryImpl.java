@@ -0,0 +1,92 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import com.documentgenerationservice.dto.TemplateSummaryDTO;
+import com.documentgenerationservice.model.Template;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class TemplateRepositoryImpl implements TemplateRepositoryCustom {
+
+    private static final Map<String, String> SORT_FIELDS = Map.of(
+            "createdAt", "t.createdAt",
+            "updatedAt", "t.updatedAt",
+            "name", "t.name"
+    );
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Страница шаблонов: проекция без content и DOCX, затем поля всех шаблонов страницы одним запросом
+     */
+    @Override
+    public PageResponse<TemplateSummaryDTO> findSummaryPageByUserId(Long userId, ListQuery query) {
+        PagedQuery<TemplateSummaryDTO> pagedQuery = new PagedQuery<>(entityManager,
+                "select new com.documentgenerationservice.dto.TemplateSummaryDTO(" +
+                        "t.id, t.name, t.description, t.createdAt, t.updatedAt, t.originalFileName, " +
+                        "case when t.docxBlobHash is not null then true else false end)",
+                " from Template t",
+                "t",
+                TemplateSummaryDTO.class);
+
+        pagedQuery.where("t.user.id = :userId", "userId", userId)
+                .whereIfPresent("t.createdAt >= :from", "from", query.getFrom())
+                .whereIfPresent("t.createdAt < :to", "to", query.getTo());
+        if (query.getName() != null && !query.getName().trim().isEmpty()) {
+            pagedQuery.where("lower(t.name) like :name", "name", "%" + query.getName().trim().toLowerCase() + "%");
+        }
+
+        PageResponse<TemplateSummaryDTO> page = pagedQuery.fetch(query, SORT_FIELDS,
+                template -> new KeysetCursor(template.getCreatedAt(), template.getId()));
+        loadFields(page.getContent());
+        return page;
+    }
+
+    private void loadFields(List<TemplateSummaryDTO> templates) {
+        if (templates.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = templates.stream().map(TemplateSummaryDTO::getId).collect(Collectors.toList());
+        List<Object[]> rows = entityManager.createQuery(
+                        "select t.id, key(f), value(f) from Template t join t.fields f where t.id in :ids", Object[].class)
+                .setParameter("ids", ids)
+                .getResultList();
+
+        Map<Long, Map<String, String>> fieldsByTemplate = new HashMap<>();
+        for (Object[] row : rows) {
+            fieldsByTemplate.computeIfAbsent((Long) row[0], id -> new HashMap<>())
+                    .put((String) row[1], (String) row[2]);
+        }
+        for (TemplateSummaryDTO template : templates) {
+            template.setFields(fieldsByTemplate.getOrDefault(template.getId(), new HashMap<>()));
+        }
+    }
+
+    /**
+     * Блокирует строку шаблона до конца транзакции: изменения шаблона и номера его версий
+     * выдаются по очереди. Шаблон перечитывается вместе с блокировкой - в контексте запроса
+     * (open-in-view) может остаться экземпляр, прочитанный до нее. Повторный вызов в той же
+     * транзакции возвращает уже заблокированный экземпляр с несохраненными изменениями.
+     */
+    @Override
+    public Optional<Template> findForUpdateById(Long id) {
+        Template template = entityManager.find(Template.class, id);
+        if (template == null) {
+            return Optional.empty();
+        }
+        if (entityManager.getLockMode(template) != LockModeType.PESSIMISTIC_WRITE) {
+            entityManager.refresh(template, LockModeType.PESSIMISTIC_WRITE);
+        }
+        return Optional.of(template);
+    }
+}
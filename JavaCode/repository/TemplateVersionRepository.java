@@ -0,0 +1,48 @@
+package com.documentgenerationservice.repository;
+
+import com.documentgenerationservice.model.TemplateVersion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TemplateVersionRepository extends JpaRepository<TemplateVersion, Long> {
+
+    @Query("select coalesce(max(v.number), 0) from TemplateVersion v where v.template.id = :templateId")
+    int findLastNumber(@Param("templateId") Long templateId);
+
+    /**
+     * Удаляет версию, если она не текущая у шаблона и на нее не ссылается ни один документ
+     */
+    @Modifying
+    @Query("delete from TemplateVersion v where v.id = :id"
+            + " and not exists (select t.id from Template t where t.currentVersionId = v.id)"
+            + " and not exists (select d.id from Document d where d.templateVersion.id = v.id)")
+    int deleteIfUnreferenced(@Param("id") Long id);
+
+    @Query("select v.id from TemplateVersion v where v.id > :afterId"
+            + " and not exists (select t.id from Template t where t.currentVersionId = v.id)"
+            + " and not exists (select d.id from Document d where d.templateVersion.id = v.id)"
+            + " order by v.id")
+    List<Long> findUnreferencedIds(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select v.id from TemplateVersion v where v.template.id = :templateId")
+    List<Long> findIdsByTemplateId(@Param("templateId") Long templateId);
+
+    @Modifying
+    @Query("delete from TemplateVersion v where v.template.id = :templateId")
+    int deleteByTemplateId(@Param("templateId") Long templateId);
+
+    /**
+     * Версии, созданные до переноса DOCX шаблона в DocxBlobStore, получают его хэш
+     */
+    @Modifying
+    @Query(value = "update template_versions set docx_blob_hash = :hash where template_id = :templateId"
+            + " and docx_blob_hash is null", nativeQuery = true)
+    int setMissingDocxBlobHash(@Param("templateId") Long templateId, @Param("hash") String hash);
+}
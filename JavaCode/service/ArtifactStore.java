@@ -0,0 +1,233 @@
+package com.documentgenerationservice.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Контентно-адресуемое хранилище отрендеренных файлов на локальном диске.
+ * Имя файла - SHA-256 от всего, что влияет на результат, поэтому одинаковые
+ * экспорты отдаются с диска без повторного рендеринга. Старые файлы вытесняются
+ * по LRU при превышении лимита размера.
+ */
+@Component
+public class ArtifactStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactStore.class);
+
+    /**
+     * Записывает содержимое артефакта в переданный поток
+     */
+    @FunctionalInterface
+    public interface ArtifactWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    private final Path root;
+    private final Path tempDirectory;
+    private final long maxSizeBytes;
+
+    // Порядок доступа: первым идет давно не использовавшийся файл
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    public ArtifactStore(@Value("${app.artifacts.dir:${java.io.tmpdir}/document-artifacts}") String directory,
+                         @Value("${app.artifacts.max-size-mb:1024}") long maxSizeMb) {
+        this.root = Paths.get(directory).toAbsolutePath();
+        this.tempDirectory = root.resolve("tmp");
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * Восстанавливает индекс после перезапуска: недописанные временные файлы удаляются,
+     * остальные упорядочиваются по времени последнего доступа
+     */
+    @PostConstruct
+    public void rebuildIndex() throws IOException {
+        Files.createDirectories(tempDirectory);
+        try (Stream<Path> leftovers = Files.list(tempDirectory)) {
+            leftovers.forEach(this::deleteQuietly);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root, 2)) {
+            walk.filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(tempDirectory))
+                    .forEach(files::add);
+        }
+        files.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+
+        synchronized (this) {
+            entries.clear();
+            totalBytes = 0;
+            for (Path file : files) {
+                long size = size(file);
+                entries.put(root.relativize(file).toString(), size);
+                totalBytes += size;
+            }
+            evictIfNeeded();
+        }
+
+        logger.info("Artifact store at {} contains {} files, {} bytes", root, entries.size(), totalBytes);
+    }
+
+    public static String key(String... parts) {
+        MessageDigest digest = sha256();
+        for (String part : parts) {
+            updateWithLength(digest, part);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Ключ для данных документа: порядок полей не влияет на результат
+     */
+    public static String dataKey(Map<String, String> data) {
+        MessageDigest digest = sha256();
+        if (data != null) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(data).entrySet()) {
+                updateWithLength(digest, entry.getKey());
+                updateWithLength(digest, entry.getValue());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Готовый файл или null, если его еще нет
+     */
+    public Path find(String key, String extension) {
+        String relativePath = relativePath(key, extension);
+        Path target = root.resolve(relativePath);
+
+        synchronized (this) {
+            if (entries.get(relativePath) != null && Files.exists(target)) {
+                touch(target);
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает готовый файл или рендерит его через writer и сохраняет атомарным переименованием.
+     * Временный файл принадлежит вызову: он удаляется только после того, как writer вернул управление.
+     */
+    public Path getOrCreate(String key, String extension, ArtifactWriter writer) throws IOException {
+        Path existing = find(key, extension);
+        if (existing != null) {
+            return existing;
+        }
+        String relativePath = relativePath(key, extension);
+        Path target = root.resolve(relativePath);
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(tempDirectory, key, ".part");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                writer.write(outputStream);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+
+        long size = Files.size(target);
+        synchronized (this) {
+            Long previous = entries.put(relativePath, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            evictIfNeeded();
+        }
+        return target;
+    }
+
+    private static String relativePath(String key, String extension) {
+        return key.substring(0, 2) + "/" + key + "." + extension;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxSizeBytes && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            deleteQuietly(root.resolve(eldest.getKey()));
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Время доступа нужно только для порядка вытеснения после перезапуска
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete artifact {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void updateWithLength(MessageDigest digest, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Подписанные токены для режима app.auth.mode=token: вместо сессии клиент носит
+ * токен "v1.<ключ>.<данные>.<HMAC-SHA256>" в cookie или в заголовке Authorization.
+ * Проверка не требует состояния на сервере, поэтому запрос может обслужить любой узел
+ * с той же конфигурацией ключей.
+ *
+ * Ротация: app.auth.token.keys содержит все действующие ключи ("id:секрет в base64,..."),
+ * app.auth.token.active-key - ключ для новых токенов. Новый ключ сначала добавляется
+ * на все узлы, затем становится активным, старый удаляется после истечения TTL токенов.
+ */
+@Service
+public class AuthTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthTokenService.class);
+
+    public static final String COOKIE_NAME = "auth_token";
+
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+
+    @Value("${app.auth.mode:session}")
+    private String mode;
+
+    @Value("${app.auth.token.keys:}")
+    private String keysProperty;
+
+    @Value("${app.auth.token.active-key:}")
+    private String activeKeyId;
+
+    @Value("${app.auth.token.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${app.auth.token.cookie-secure:false}")
+    private boolean cookieSecure;
+
+    @PostConstruct
+    public void init() {
+        if (!isTokenMode()) {
+            return;
+        }
+
+        for (String item : keysProperty.split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalStateException("app.auth.token.keys entries must look like id:base64secret");
+            }
+            String id = trimmed.substring(0, separator);
+            byte[] secret = Base64.getDecoder().decode(trimmed.substring(separator + 1));
+            if (secret.length < MIN_SECRET_BYTES) {
+                throw new IllegalStateException("Token key " + id + " is shorter than " + MIN_SECRET_BYTES + " bytes");
+            }
+            keys.put(id, new SecretKeySpec(secret, ALGORITHM));
+        }
+
+        if (keys.isEmpty()) {
+            // Без общего ключа токены проверяются только на этом узле и теряются при перезапуске
+            byte[] secret = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(secret);
+            keys.put("local", new SecretKeySpec(secret, ALGORITHM));
+            activeKeyId = "local";
+            logger.warn("app.auth.token.keys is not set, using a random per-node key; tokens will not be accepted by other nodes");
+        } else if (activeKeyId.isEmpty()) {
+            activeKeyId = keys.keySet().iterator().next();
+        } else if (!keys.containsKey(activeKeyId)) {
+            throw new IllegalStateException("app.auth.token.active-key " + activeKeyId + " is not in app.auth.token.keys");
+        }
+
+        logger.info("Token authentication enabled: {} keys, active key {}, TTL {} min", keys.size(), activeKeyId, ttlMinutes);
+    }
+
+    public boolean isTokenMode() {
+        return "token".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Выпускает токен активным ключом. В токен попадают только id, имя и email
+     */
+    public String issue(User user) {
+        Instant now = Instant.now();
+        ObjectNode claims = objectMapper.createObjectNode();
+        claims.put("sub", user.getId());
+        claims.put("usr", user.getUsername());
+        claims.put("eml", user.getEmail());
+        claims.put("iat", now.getEpochSecond());
+        claims.put("exp", now.plus(Duration.ofMinutes(ttlMinutes)).getEpochSecond());
+
+        try {
+            String payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+            String signed = VERSION + "." + activeKeyId + "." + payload;
+            return signed + "." + ENCODER.encodeToString(sign(keys.get(activeKeyId), signed));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not issue auth token", e);
+        }
+    }
+
+    /**
+     * Проверяет подпись и срок действия. Возвращает пользователя без пароля,
+     * пригодного для проверки владельца и ссылок на него из сущностей.
+     */
+    public Optional<User> verify(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return Optional.empty();
+        }
+
+        SecretKeySpec key = keys.get(parts[1]);
+        if (key == null) {
+            // Ключ уже удален из ротации
+            return Optional.empty();
+        }
+
+        try {
+            byte[] expected = sign(key, parts[0] + "." + parts[1] + "." + parts[2]);
+            if (!MessageDigest.isEqual(expected, DECODER.decode(parts[3]))) {
+                return Optional.empty();
+            }
+
+            JsonNode claims = objectMapper.readTree(DECODER.decode(parts[2]));
+            if (claims.path("exp").asLong() <= Instant.now().getEpochSecond()) {
+                return Optional.empty();
+            }
+
+            User user = new User();
+            user.setId(claims.path("sub").asLong());
+            user.setUsername(claims.path("usr").asText());
+            user.setEmail(claims.path("eml").asText());
+            return Optional.of(user);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    public ResponseCookie cookie(String token) {
+        return ResponseCookie.from(COOKIE_NAME, token)
+                .httpOnly(true)
+                .secure(cookieSecure)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(Duration.ofMinutes(ttlMinutes))
+                .build();
+    }
+
+    public ResponseCookie expiredCookie() {
+        return ResponseCookie.from(COOKIE_NAME, "")
+                .httpOnly(true)
+                .secure(cookieSecure)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(0)
+                .build();
+    }
+
+    private static byte[] sign(SecretKeySpec key, String data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
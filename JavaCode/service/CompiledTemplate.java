@@ -0,0 +1,116 @@
+package com.documentgenerationservice.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Скомпилированный шаблон: литеральные сегменты и имена переменных между ними.
+ * Разбирается один раз, после чего рендерится за один проход без регулярных выражений.
+ */
+public final class CompiledTemplate {
+
+    public static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private static final CompiledTemplate EMPTY = new CompiledTemplate(new String[]{""}, new String[0], 0);
+
+    // literals.length == slots.length + 1: literal[0] slot[0] literal[1] ... slot[n-1] literal[n]
+    private final String[] literals;
+    private final String[] slots;
+    private final int literalLength;
+    private final Set<String> fieldNames;
+
+    private CompiledTemplate(String[] literals, String[] slots, int literalLength) {
+        this.literals = literals;
+        this.slots = slots;
+        this.literalLength = literalLength;
+
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, slots);
+        this.fieldNames = Collections.unmodifiableSet(names);
+    }
+
+    public static CompiledTemplate compile(String templateContent) {
+        if (templateContent == null || templateContent.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int literalLength = 0;
+        int position = 0;
+
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(templateContent);
+        while (matcher.find()) {
+            String literal = templateContent.substring(position, matcher.start());
+            literals.add(literal);
+            literalLength += literal.length();
+            slots.add(matcher.group(1));
+            position = matcher.end();
+        }
+
+        String tail = templateContent.substring(position);
+        literals.add(tail);
+        literalLength += tail.length();
+
+        return new CompiledTemplate(
+                literals.toArray(new String[0]),
+                slots.toArray(new String[0]),
+                literalLength
+        );
+    }
+
+    public String render(Map<String, String> data) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder result = new StringBuilder(estimateLength(data));
+        renderTo(result, data);
+        return result.toString();
+    }
+
+    public void renderTo(StringBuilder target, Map<String, String> data) {
+        target.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = data != null ? data.get(slots[i]) : null;
+            if (value != null) {
+                target.append(value);
+            }
+            target.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * Оценивает длину результата, чтобы буфер не приходилось расширять при рендеринге
+     */
+    public int estimateLength(Map<String, String> data) {
+        int length = literalLength;
+        if (data != null) {
+            for (String slot : slots) {
+                String value = data.get(slot);
+                if (value != null) {
+                    length += value.length();
+                }
+            }
+        }
+        return length;
+    }
+
+    public boolean hasPlaceholders() {
+        return slots.length > 0;
+    }
+
+    public int getPlaceholderCount() {
+        return slots.length;
+    }
+
+    public Set<String> getFieldNames() {
+        return fieldNames;
+    }
+}
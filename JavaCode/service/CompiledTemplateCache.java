@@ -0,0 +1,32 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.TemplateVersion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш скомпилированных шаблонов. Ключ - id неизменяемой версии шаблона,
+ * поэтому запись никогда не устаревает и не требует инвалидации.
+ */
+@Component
+public class CompiledTemplateCache {
+
+    private final BoundedCache<String, CompiledTemplate> cache;
+
+    public CompiledTemplateCache(@Value("${app.template-cache.max-size:256}") int maxSize) {
+        this.cache = new BoundedCache<>(maxSize);
+    }
+
+    public CompiledTemplate get(TemplateVersion version) {
+        if (version.getId() == null) {
+            // Несохраненную версию кэшировать не по чему
+            return CompiledTemplate.compile(version.getContent());
+        }
+
+        return cache.computeIfAbsent(keyOf(version), key -> CompiledTemplate.compile(version.getContent()));
+    }
+
+    static String keyOf(TemplateVersion version) {
+        return "v" + version.getId();
+    }
+}
@@ -0,0 +1,196 @@
+package com.documentgenerationservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Потоково читает строки данных для генерации документов из NDJSON или CSV.
+ * Ошибка разбора строки не прерывает чтение, а возвращается вместе с номером строки.
+ */
+public class DataRowReader implements Iterator<DataRowReader.DataRow>, Closeable {
+
+    public enum Format { NDJSON, CSV }
+
+    public static final class DataRow {
+        private final int number;
+        private final Map<String, String> data;
+        private final String error;
+
+        DataRow(int number, Map<String, String> data, String error) {
+            this.number = number;
+            this.data = data;
+            this.error = error;
+        }
+
+        public int getNumber() { return number; }
+        public Map<String, String> getData() { return data; }
+        public String getError() { return error; }
+        public boolean isValid() { return error == null; }
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final Format format;
+    private List<String> csvHeader;
+    private DataRow next;
+    private int rowNumber;
+
+    public DataRowReader(InputStream inputStream, Format format) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+    public static Format detectFormat(String contentType, String explicitFormat) {
+        String value = explicitFormat != null ? explicitFormat : contentType;
+        if (value != null && value.toLowerCase().contains("csv")) {
+            return Format.CSV;
+        }
+        return Format.NDJSON;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public DataRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DataRow row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private DataRow readNext() {
+        try {
+            return format == Format.CSV ? readCsvRow() : readJsonRow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DataRow readJsonRow() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        rowNumber++;
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            if (!node.isObject()) {
+                return new DataRow(rowNumber, null, "Row is not a JSON object");
+            }
+
+            Map<String, String> data = new LinkedHashMap<>();
+            node.fields().forEachRemaining(field ->
+                    data.put(field.getKey(), field.getValue().isNull() ? "" : field.getValue().asText()));
+            return new DataRow(rowNumber, data, null);
+        } catch (JsonProcessingException e) {
+            return new DataRow(rowNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private DataRow readCsvRow() throws IOException {
+        if (csvHeader == null) {
+            csvHeader = readCsvRecord();
+            if (csvHeader == null) {
+                return null;
+            }
+        }
+
+        List<String> values;
+        do {
+            values = readCsvRecord();
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isEmpty());
+
+        rowNumber++;
+        if (values.size() != csvHeader.size()) {
+            return new DataRow(rowNumber, null,
+                    "Expected " + csvHeader.size() + " columns but found " + values.size());
+        }
+
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int i = 0; i < csvHeader.size(); i++) {
+            data.put(csvHeader.get(i), values.get(i));
+        }
+        return new DataRow(rowNumber, data, null);
+    }
+
+    /**
+     * Читает одну запись CSV (RFC 4180): значения в кавычках могут содержать запятые,
+     * переводы строк и удвоенные кавычки
+     */
+    private List<String> readCsvRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int following = reader.read();
+                    if (following == '"') {
+                        value.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                value.append((char) c);
+            }
+            c = reader.read();
+        }
+
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -0,0 +1,76 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * В ленивом режиме хранения фоном переводит уже сохраненные документы на хранение
+ * без generatedContent. Текст удаляется только у документов, которые по текущему
+ * шаблону рендерятся в тот же текст; остальные (шаблон с тех пор менялся) не трогаются.
+ */
+@Component
+public class DocumentContentBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentContentBackfill.class);
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Value("${app.documents.content-backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    @Value("${app.documents.content-backfill-batch-size:200}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!backfillOnStartup || !documentService.isLazyContentStorage()) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "document-content-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        int compacted = 0;
+        int scanned = 0;
+        int failed = 0;
+        long lastId = 0;
+
+        while (true) {
+            List<Long> ids = documentRepository.findIdsWithContent(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            try {
+                compacted += documentService.compactContent(ids);
+            } catch (Exception e) {
+                // Порция остается с текстом, это корректное состояние
+                failed += ids.size();
+                logger.error("Could not compact content of documents {}..{}: {}",
+                        ids.get(0), ids.get(ids.size() - 1), e.getMessage());
+            }
+            scanned += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        if (scanned > 0) {
+            logger.info("Document content backfill finished: {} of {} documents switched to lazy rendering, {} failed",
+                    compacted, scanned, failed);
+        }
+    }
+}
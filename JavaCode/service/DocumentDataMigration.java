@@ -0,0 +1,73 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Фоновый перенос полей документов из таблицы document_data в JSON-столбец documents.data_json
+ * после старта приложения. Порция переносится в своей транзакции, прерванный перенос
+ * продолжается со следующего запуска. Когда document_data опустеет, таблицу можно удалить.
+ */
+@Component
+public class DocumentDataMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentDataMigration.class);
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Value("${app.documents.migrate-data-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    @Value("${app.documents.data-migration-batch-size:200}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "document-data-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        int migrated = 0;
+        int failed = 0;
+        long lastId = 0;
+
+        while (true) {
+            List<Long> ids = documentRepository.findIdsWithLegacyData(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            try {
+                migrated += documentService.migrateLegacyData(ids);
+            } catch (Exception e) {
+                // Порция остается в document_data, перенос повторится при следующем запуске
+                failed += ids.size();
+                logger.error("Could not move data of documents {}..{} to data_json: {}",
+                        ids.get(0), ids.get(ids.size() - 1), e.getMessage());
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        if (migrated > 0 || failed > 0) {
+            logger.info("Document data migration finished: {} documents moved, {} failed", migrated, failed);
+        }
+    }
+}
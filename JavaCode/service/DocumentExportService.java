@@ -0,0 +1,196 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.documentgenerationservice.repository.DocumentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Экспорт сгенерированных документов в TXT, DOCX и PDF.
+ * Используется как синхронными эндпоинтами, так и фоновыми задачами экспорта.
+ */
+@Service
+public class DocumentExportService {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private FileProcessingService fileProcessingService;
+
+    @Autowired
+    private ArtifactStore artifactStore;
+
+    @Autowired
+    private PdfFontRegistry pdfFontRegistry;
+
+    @Autowired
+    private PdfPageLayerCache pdfPageLayerCache;
+
+    @Autowired
+    private RenderingBulkhead renderingBulkhead;
+
+    @Autowired
+    private RenderedContentCache renderedContentCache;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    @Value("${app.export.text-gzip:true}")
+    private boolean textGzipEnabled;
+
+    @Value("${app.export.text-gzip-min-bytes:1024}")
+    private int textGzipMinBytes;
+
+    /**
+     * Экспортирует документ через хранилище артефактов: если такой же файл уже
+     * рендерился (та же версия шаблона, данные и формат), он берется с диска.
+     * Для потоков запросов: рендеринг идет в RenderingBulkhead, при перегрузке бросает
+     * RejectedExecutionException.
+     */
+    public ExportedFile export(Document document, ExportFormat format, DocxRenderEngine engine) throws IOException {
+        return export(document, format, engine, false);
+    }
+
+    /**
+     * Экспорт вне HTTP-запроса: документ загружается короткой транзакцией, рендеринг идет без нее
+     * и ждет свободного места в RenderingBulkhead, а не получает отказ
+     */
+    public ExportedFile exportById(Long documentId, ExportFormat format, DocxRenderEngine engine) throws IOException {
+        return exportInBackground(documentService.loadForExport(documentId), format, engine);
+    }
+
+    /**
+     * Экспорт вне HTTP-запроса документа, уже загруженного DocumentService.loadForExport
+     */
+    public ExportedFile exportInBackground(Document document, ExportFormat format, DocxRenderEngine engine)
+            throws IOException {
+        return export(document, format, engine, true);
+    }
+
+    private ExportedFile export(Document document, ExportFormat format, DocxRenderEngine engine,
+                                boolean background) throws IOException {
+        DocxRenderEngine renderEngine = engine != null ? engine : fileProcessingService.getDefaultDocxEngine();
+        TemplateVersion version = templateVersionService.of(document);
+        String key = artifactKey(document, version, format, renderEngine);
+
+        Path path = artifactStore.find(key, format.getExtension());
+        if (path == null) {
+            // Файл артефакта целиком создается и удаляется внутри задачи пула: запрос, не дождавшийся
+            // рендеринга, не трогает файл, в который еще идет запись
+            RenderingBulkhead.Task<Path> task = () -> artifactStore.getOrCreate(key, format.getExtension(),
+                    outputStream -> render(document, version, format, renderEngine, outputStream));
+            path = background ? renderingBulkhead.executeBlocking(task) : renderingBulkhead.execute(task);
+        }
+
+        String filePath = path.toString();
+        if (document.getId() != null && !filePath.equals(document.getFilePath())) {
+            documentRepository.updateFilePath(document.getId(), filePath);
+            document.setFilePath(filePath);
+        }
+
+        return new ExportedFile(document.getName() + "." + format.getExtension(), format, path, key);
+    }
+
+    private void render(Document document, TemplateVersion version, ExportFormat format, DocxRenderEngine engine,
+                        OutputStream outputStream) throws IOException {
+        switch (format) {
+            case TXT:
+                writeText(getText(document), outputStream, false);
+                break;
+            case DOCX:
+                exportToDocx(document, version, engine, outputStream);
+                break;
+            case PDF:
+                // PDF пишется в файл артефакта по мере сериализации, без промежуточного массива
+                fileProcessingService.writePdfDocument(getText(document),
+                        pdfPageLayerCache.get(version), outputStream);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+    }
+
+    /**
+     * Текст документа: сохраненный или отрендеренный по данным (ленивый режим)
+     */
+    public String getText(Document document) {
+        return renderedContentCache.get(document);
+    }
+
+    /**
+     * Сжимать ли текстовый экспорт: клиент принимает gzip, и текст не меньше порога
+     * (длина в символах - нижняя оценка размера в UTF-8)
+     */
+    public boolean shouldGzipText(String text, boolean clientAcceptsGzip) {
+        return textGzipEnabled && clientAcceptsGzip && text != null && text.length() >= textGzipMinBytes;
+    }
+
+    /**
+     * Пишет текст документа в поток порциями кодировщика, без промежуточного byte[].
+     * Поток не закрывается.
+     */
+    public void writeText(String text, OutputStream outputStream, boolean gzip) throws IOException {
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(new NonClosingOutputStream(outputStream), 8192) : null;
+        Writer writer = new OutputStreamWriter(gzipStream != null ? gzipStream : outputStream, StandardCharsets.UTF_8);
+        if (text != null) {
+            writer.write(text);
+        }
+        writer.flush();
+        if (gzipStream != null) {
+            gzipStream.close();
+        }
+    }
+
+    /**
+     * Ключ строится без рендеринга: из версии шаблона и данных документа. TXT и PDF документа,
+     * сохраненного с текстом (не ленивый режим), привязаны к этому тексту.
+     */
+    private String artifactKey(Document document, TemplateVersion version, ExportFormat format,
+                               DocxRenderEngine engine) {
+        // getData() учитывает document_data: у еще не перенесенного документа тот же ключ, что и после переноса
+        String textKey = document.getGeneratedContent() != null
+                ? ArtifactStore.key("CONTENT", document.getGeneratedContent())
+                : ArtifactStore.key(CompiledTemplateCache.keyOf(version), ArtifactStore.dataKey(document.getData()));
+
+        if (format == ExportFormat.PDF) {
+            return ArtifactStore.key(format.name(), PdfLayoutEngine.VERSION, pdfFontRegistry.getKey(),
+                    pdfPageLayerCache.get(version).getKey(), textKey);
+        }
+        if (format != ExportFormat.DOCX) {
+            return ArtifactStore.key(format.name(), textKey);
+        }
+
+        String source = version.hasDocxFile() ? engine.name() : "TEXT";
+        return ArtifactStore.key(format.name(), source, CompiledTemplateCache.keyOf(version),
+                ArtifactStore.dataKey(document.getData()));
+    }
+
+    private void exportToDocx(Document document, TemplateVersion version, DocxRenderEngine engine,
+                              OutputStream outputStream) throws IOException {
+        Map<String, String> data = document.getData();
+
+        // Если есть сохраненный DOCX файл, используем его как основу
+        if (version.hasDocxFile()) {
+            fileProcessingService.writeDocxFromTemplate(version, data, engine, outputStream);
+            return;
+        }
+
+        // Используем текстовый шаблон
+        fileProcessingService.writeDocxFromTextTemplate(version, data, outputStream);
+    }
+}
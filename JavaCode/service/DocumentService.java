@@ -1,27 +1,72 @@
 package com.documentgenerationservice.service;
 
+import com.documentgenerationservice.dto.BatchGenerationResult;
 import com.documentgenerationservice.dto.DocumentDTO;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
 import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.DocumentStatus;
 import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
 import com.documentgenerationservice.model.User;
 import com.documentgenerationservice.repository.DocumentRepository;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 public class DocumentService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
+
+    // Размер списка id в одном запросе к базе
+    private static final int EXPORT_BATCH = 500;
+
     @Autowired
     private DocumentRepository documentRepository;
 
+    @Autowired
+    private CompiledTemplateCache compiledTemplateCache;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    @Autowired
+    private RenderedContentCache renderedContentCache;
+
+    @Autowired
+    private GenerationIdempotency idempotency;
+
+    @Autowired
+    private RenderingBulkhead renderingBulkhead;
+
+    @Value("${app.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    // eager - текст рендерится при генерации и хранится в generatedContent,
+    // lazy - хранятся только данные и версия шаблона, текст рендерится при экспорте
+    @Value("${app.documents.content-storage:eager}")
+    private String contentStorage;
+
     public List<Document> getUserDocuments(User user) {
         try {
             return documentRepository.findByUser(user);
@@ -34,54 +79,309 @@ public class DocumentService {
         return documentRepository.findById(id);
     }
 
+    /**
+     * Документ для рендеринга вне транзакции: короткая транзакция только на чтение загружает
+     * все, что нужно экспорту, чтобы соединение не держалось на время POI/PDFBox
+     */
+    @Transactional(readOnly = true)
+    public Document loadForExport(Long id) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new IllegalStateException("Document not found"));
+        initializeForExport(document);
+        return document;
+    }
+
+    /**
+     * Документы пользователя для рендеринга вне транзакции (ZIP-архив): одна транзакция
+     * только на чтение, запросы порциями по EXPORT_BATCH id. Порядок - как в ids,
+     * чужих и несуществующих документов в результате нет.
+     */
+    @Transactional(readOnly = true)
+    public List<Document> loadForExport(Long userId, List<Long> ids) {
+        Map<Long, Document> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += EXPORT_BATCH) {
+            for (Document document : documentRepository.findByUserIdAndIdIn(userId,
+                    ids.subList(from, Math.min(from + EXPORT_BATCH, ids.size())))) {
+                initializeForExport(document);
+                byId.put(document.getId(), document);
+            }
+        }
+
+        List<Document> documents = new ArrayList<>(byId.size());
+        for (Long id : ids) {
+            Document document = byId.get(id);
+            if (document != null) {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    private static void initializeForExport(Document document) {
+        if (document.getTemplateVersion() == null) {
+            // Версия документа без версии - текущая версия шаблона, ее id берется из шаблона
+            Hibernate.initialize(document.getTemplate());
+        }
+        if (!document.hasDataJson()) {
+            // Поля документа, еще не перенесенного в data_json
+            Hibernate.initialize(document.getLegacyData());
+        }
+    }
+
     public Document generateDocument(String name, Template template, User user, Map<String, String> data) {
-        try {
-            String generatedContent = generateContent(template.getContent(), data);
+        return generateDocument(name, template, user, data, null);
+    }
 
+    /**
+     * Генерация с ключом запроса (GenerationIdempotency.requestKey): повтор в пределах окна
+     * возвращает уже созданный документ без рендеринга
+     */
+    public Document generateDocument(String name, Template template, User user, Map<String, String> data,
+                                     String requestKey) {
+        if (requestKey != null) {
+            Optional<Document> repeated = findRepeated(user, requestKey);
+            if (repeated.isPresent()) {
+                return replay(repeated.get());
+            }
+        }
+
+        try {
+            String size = templateSizeBucket(template);
+            TemplateVersion version = templateVersionService.current(template);
             Document document = new Document(name, template, user);
             document.setData(data);
-            document.setGeneratedContent(generatedContent);
-            document.setStatus("GENERATED");
+            document.setTemplateVersion(version);
+            document.setRequestKey(requestKey);
+            document.setStatus(DocumentStatus.GENERATED);
 
-            return documentRepository.save(document);
+            if (!isLazyContentStorage()) {
+                String generatedContent = metrics.time(GenerationMetrics.SUBSTITUTION, GenerationMetrics.GENERATE, size,
+                        () -> generateContent(version, data));
+                document.setGeneratedContent(generatedContent);
+                metrics.recordOutput(GenerationMetrics.GENERATE, size, generatedContent.length());
+            }
+
+            Document saved = metrics.time(GenerationMetrics.PERSIST, GenerationMetrics.GENERATE, size,
+                    () -> documentRepository.save(document));
+            if (requestKey != null) {
+                idempotency.record(user.getId(), requestKey, saved.getId(), saved.getCreatedAt());
+            }
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            // Одновременный повтор сохранил документ с тем же ключом первым
+            Optional<Document> winner = requestKey != null
+                    ? documentRepository.findByUserIdAndRequestKey(user.getId(), requestKey)
+                    : Optional.empty();
+            if (winner.isPresent()) {
+                return replay(winner.get());
+            }
+            throw new RuntimeException("Error generating document: " + e.getMessage());
         } catch (Exception e) {
             throw new RuntimeException("Error generating document: " + e.getMessage());
         }
     }
 
-    private String generateContent(String templateContent, Map<String, String> data) {
-        String result = templateContent;
+    /**
+     * Повтор отвечает уже созданным документом как есть, управляемая сущность не меняется
+     */
+    private Document replay(Document document) {
+        idempotency.recordReplay();
+        return document;
+    }
+
+    /**
+     * Документ, созданный тем же запросом в пределах окна. Ключ документа старше окна
+     * освобождается, чтобы его мог занять новый документ.
+     */
+    private Optional<Document> findRepeated(User user, String requestKey) {
+        Long documentId = idempotency.find(user.getId(), requestKey);
+        if (documentId != null) {
+            Optional<Document> document = documentRepository.findById(documentId);
+            if (document.isPresent()) {
+                return document;
+            }
+            idempotency.forget(user.getId(), requestKey);
+        }
+
+        Optional<Document> stored = documentRepository.findByUserIdAndRequestKey(user.getId(), requestKey);
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+        Document document = stored.get();
+        if (idempotency.isWithinWindow(document.getCreatedAt())) {
+            idempotency.record(user.getId(), requestKey, document.getId(), document.getCreatedAt());
+            return stored;
+        }
+        documentRepository.clearRequestKey(document.getId());
+        return Optional.empty();
+    }
+
+    /**
+     * Пакетная генерация: шаблон компилируется один раз, строки рендерятся параллельно порциями
+     * в RenderingBulkhead и сохраняются через saveAll, чтобы Hibernate мог группировать INSERT в JDBC-батчи
+     */
+    public BatchGenerationResult generateDocuments(String name, Template template, User user,
+                                                   Iterator<DataRowReader.DataRow> rows) throws IOException {
+        TemplateVersion version = templateVersionService.current(template);
+        CompiledTemplate compiledTemplate = compiledTemplateCache.get(version);
+        String size = templateSizeBucket(template);
+        BatchGenerationResult result = new BatchGenerationResult();
 
-        Pattern pattern = Pattern.compile("\\$\\{([^}]+)\\}");
-        Matcher matcher = pattern.matcher(templateContent);
+        List<DataRowReader.DataRow> chunk = new ArrayList<>(batchChunkSize);
+        while (rows.hasNext()) {
+            DataRowReader.DataRow row = rows.next();
+            if (!row.isValid()) {
+                result.addFailure(row.getNumber(), row.getError());
+                continue;
+            }
 
-        while (matcher.find()) {
-            String variableName = matcher.group(1);
-            String value = data.getOrDefault(variableName, "");
-            result = result.replace("${" + variableName + "}", value);
+            chunk.add(row);
+            if (chunk.size() >= batchChunkSize) {
+                generateChunk(name, template, version, user, compiledTemplate, size, chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            generateChunk(name, template, version, user, compiledTemplate, size, chunk, result);
         }
 
+        logger.info("Batch generation for template {} finished: {} generated, {} failed",
+                template.getId(), result.getGenerated(), result.getFailed());
         return result;
     }
 
+    private void generateChunk(String name, Template template, TemplateVersion version, User user,
+                               CompiledTemplate compiledTemplate, String size, List<DataRowReader.DataRow> chunk,
+                               BatchGenerationResult result) throws IOException {
+        List<Document> documents = new ArrayList<>(chunk.size());
+        for (DataRowReader.DataRow row : chunk) {
+            Document document = new Document(name + " #" + row.getNumber(), template, user);
+            document.setData(row.getData());
+            document.setTemplateVersion(version);
+            documents.add(document);
+        }
+
+        if (!isLazyContentStorage()) {
+            // Порция делится на части по числу потоков RenderingBulkhead, части рендерятся параллельно
+            List<String> contents = metrics.time(GenerationMetrics.SUBSTITUTION, GenerationMetrics.GENERATE, size,
+                    () -> renderSlices(compiledTemplate, chunk));
+            for (int i = 0; i < documents.size(); i++) {
+                documents.get(i).setGeneratedContent(contents.get(i));
+            }
+        }
+
+        try {
+            List<Document> saved = metrics.time(GenerationMetrics.PERSIST, GenerationMetrics.GENERATE, size,
+                    () -> documentRepository.saveAll(documents));
+            for (int i = 0; i < chunk.size(); i++) {
+                result.addSuccess(chunk.get(i).getNumber(), saved.get(i).getId());
+            }
+        } catch (Exception e) {
+            logger.error("Error saving batch chunk: {}", e.getMessage());
+            for (DataRowReader.DataRow row : chunk) {
+                result.addFailure(row.getNumber(), "Error saving document: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<String> renderSlices(CompiledTemplate compiledTemplate, List<DataRowReader.DataRow> chunk)
+            throws IOException {
+        int sliceSize = (chunk.size() + renderingBulkhead.getPoolSize() - 1) / renderingBulkhead.getPoolSize();
+        List<RenderingBulkhead.Task<List<String>>> slices = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            List<DataRowReader.DataRow> slice = chunk.subList(from, Math.min(from + sliceSize, chunk.size()));
+            slices.add(() -> {
+                List<String> contents = new ArrayList<>(slice.size());
+                for (DataRowReader.DataRow row : slice) {
+                    contents.add(compiledTemplate.render(row.getData()));
+                }
+                return contents;
+            });
+        }
+
+        List<String> contents = new ArrayList<>(chunk.size());
+        for (List<String> slice : renderingBulkhead.executeAll(slices)) {
+            contents.addAll(slice);
+        }
+        return contents;
+    }
+
+    /**
+     * Переносит поля документов из строк document_data в JSON-столбец одной транзакцией на порцию.
+     * Возвращает число перенесенных документов.
+     */
+    @Transactional
+    public int migrateLegacyData(List<Long> documentIds) {
+        int migrated = 0;
+        for (Document document : documentRepository.findAllById(documentIds)) {
+            Map<String, String> legacyData = document.getLegacyData();
+            if (document.hasDataJson() || legacyData == null || legacyData.isEmpty()) {
+                continue;
+            }
+            document.setData(new LinkedHashMap<>(legacyData));
+            // Очистка коллекции удаляет строки document_data
+            legacyData.clear();
+            migrated++;
+        }
+        return migrated;
+    }
+
+    public boolean isLazyContentStorage() {
+        return "lazy".equalsIgnoreCase(contentStorage);
+    }
+
+    /**
+     * Переводит документы в ленивый режим: текст удаляется, только если повторный рендеринг
+     * по версии шаблона документа дает ровно его. Возвращает число переведенных документов.
+     */
+    @Transactional
+    public int compactContent(List<Long> documentIds) {
+        int compacted = 0;
+        for (Document document : documentRepository.findAllById(documentIds)) {
+            String content = document.getGeneratedContent();
+            if (content == null || document.getData() == null || document.getTemplate() == null) {
+                continue;
+            }
+            TemplateVersion version = templateVersionService.of(document);
+            if (content.equals(generateContent(version, document.getData()))) {
+                document.setGeneratedContent(null);
+                if (document.getTemplateVersion() == null) {
+                    document.setTemplateVersion(version);
+                }
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    private String templateSizeBucket(Template template) {
+        return GenerationMetrics.sizeBucket(template.getContent() != null ? template.getContent().length() : 0);
+    }
+
+    private String generateContent(TemplateVersion version, Map<String, String> data) {
+        return compiledTemplateCache.get(version).render(data);
+    }
+
+    /**
+     * Удаляет документ и вслед за ним его версию шаблона, если она больше никому не нужна
+     */
     public void deleteDocument(Long id) {
+        Long versionId = documentRepository.findTemplateVersionIdById(id);
         documentRepository.deleteById(id);
+        renderedContentCache.evict(id);
+        templateVersionService.deleteIfUnreferenced(versionId);
     }
 
-    public List<DocumentDTO> getUserDocumentsDTO(User user) {
-        List<Document> documents = documentRepository.findByUser(user);
-        return documents.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    /**
+     * Страница документов пользователя: проекция в DTO без загрузки data и generatedContent
+     */
+    public PageResponse<DocumentDTO> getUserDocumentsPage(User user, ListQuery query) {
+        try {
+            return documentRepository.findPageByUserId(user.getId(), query);
+        } catch (InvalidDataAccessApiUsageException e) {
+            // Прокси репозитория оборачивает ошибки параметров (сортировка, курсор) - возвращаем исходную
+            throw new IllegalArgumentException(e.getMostSpecificCause().getMessage(), e);
+        }
     }
 
-    private DocumentDTO convertToDTO(Document document) {
-        return new DocumentDTO(
-                document.getId(),
-                document.getName(),
-                document.getTemplate() != null ? document.getTemplate().getName() : "No template",
-                document.getStatus(),
-                document.getCreatedAt()
-        );
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.repository.DocxBlobRepository;
+import com.documentgenerationservice.repository.TemplateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Фоновый перенос DOCX из строк таблицы templates в DocxBlobStore после старта приложения.
+ * Каждый шаблон переносится в своей транзакции, поэтому прерванный перенос продолжается
+ * со следующего запуска. Заодно удаляются файлы без ссылок, оставшиеся после сбоев.
+ */
+@Component
+public class DocxBlobMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocxBlobMigration.class);
+
+    @Autowired
+    private TemplateRepository templateRepository;
+
+    @Autowired
+    private DocxBlobRepository docxBlobRepository;
+
+    @Autowired
+    private DocxBlobService docxBlobService;
+
+    @Value("${app.blobs.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    @Value("${app.blobs.migration-batch-size:20}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "docx-blob-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        int migrated = 0;
+        int failed = 0;
+        long lastId = 0;
+
+        while (true) {
+            // Маленькие порции: каждая строка тянет за собой весь DOCX
+            List<Long> ids = templateRepository.findIdsWithLegacyDocx(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            for (Long id : ids) {
+                try {
+                    if (docxBlobService.migrateLegacyTemplate(id)) {
+                        migrated++;
+                    }
+                } catch (Exception e) {
+                    // Шаблон остается со старой колонкой, перенос повторится при следующем запуске
+                    failed++;
+                    logger.error("Could not move DOCX of template {} to the blob store: {}", id, e.getMessage());
+                }
+                lastId = id;
+            }
+        }
+
+        for (String hash : docxBlobRepository.findUnreferencedHashes()) {
+            docxBlobService.deleteIfUnreferenced(hash);
+        }
+
+        if (migrated > 0 || failed > 0) {
+            logger.info("DOCX blob migration finished: {} templates moved, {} failed", migrated, failed);
+        }
+    }
+}
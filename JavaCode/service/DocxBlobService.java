@@ -0,0 +1,112 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.DocxBlob;
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.documentgenerationservice.repository.DocxBlobRepository;
+import com.documentgenerationservice.repository.TemplateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Подсчет ссылок шаблонов на файлы DocxBlobStore. Порядок операций такой, что сбой между шагами
+ * может только оставить лишнюю ссылку (файл не удалится), но не удалить используемый файл:
+ * ссылка берется до сохранения шаблона и до записи файла, отпускается после удаления шаблона,
+ * а файл без ссылок удаляется под блокировкой записи учета.
+ */
+@Service
+public class DocxBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocxBlobService.class);
+
+    @Autowired
+    private DocxBlobRepository docxBlobRepository;
+
+    @Autowired
+    private TemplateRepository templateRepository;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    @Autowired
+    private DocxBlobStore docxBlobStore;
+
+    /**
+     * Берет ссылку на файл с данным хэшем и кладет его в хранилище, если его там нет
+     */
+    @Transactional
+    public void acquire(String hash, Path source) throws IOException {
+        incrementOrCreate(hash, Files.size(source));
+        docxBlobStore.putIfAbsent(hash, source);
+    }
+
+    /**
+     * Сохраняет новый шаблон из DOCX одной транзакцией: ссылку на файл, шаблон и его первую версию.
+     * При сбое откатывается все вместе; в хранилище может остаться только файл без ссылок.
+     */
+    @Transactional
+    public TemplateVersion createTemplate(Template template, Path docxFile) throws IOException {
+        acquire(template.getDocxBlobHash(), docxFile);
+        Template saved = templateRepository.save(template);
+        return templateVersionService.createVersion(saved);
+    }
+
+    /**
+     * Отпускает ссылку; сам файл удаляет deleteIfUnreferenced
+     */
+    @Transactional
+    public void release(String hash) {
+        if (hash != null) {
+            docxBlobRepository.decrementRefCount(hash);
+        }
+    }
+
+    /**
+     * Удаляет файл, на который больше нет ссылок. Загрузка того же файла в это время
+     * ждет блокировку записи и затем создает ее и файл заново.
+     */
+    @Transactional
+    public void deleteIfUnreferenced(String hash) {
+        if (hash == null) {
+            return;
+        }
+        docxBlobRepository.findUnreferencedForUpdate(hash).ifPresent(blob -> {
+            docxBlobStore.delete(hash);
+            docxBlobRepository.delete(blob);
+            logger.info("Deleted unreferenced DOCX blob {}", hash);
+        });
+    }
+
+    /**
+     * Переносит DOCX шаблона из колонки docx_file_content в хранилище.
+     * Возвращает false, если переносить нечего.
+     */
+    @Transactional
+    public boolean migrateLegacyTemplate(Long templateId) throws IOException {
+        byte[] content = templateRepository.findLegacyDocxFileContentById(templateId);
+        if (content == null) {
+            return false;
+        }
+
+        String hash = DocxBlobStore.hash(content);
+        incrementOrCreate(hash, content.length);
+        docxBlobStore.putIfAbsent(hash, content);
+        templateRepository.moveDocxToBlob(templateId, hash);
+        templateVersionService.setMissingDocxBlobHash(templateId, hash);
+        return true;
+    }
+
+    private void incrementOrCreate(String hash, long size) {
+        if (docxBlobRepository.incrementRefCount(hash) == 0) {
+            // Первая загрузка такого файла; одновременная вставка того же хэша упрется в первичный ключ
+            docxBlobRepository.saveAndFlush(new DocxBlob(hash, size));
+        }
+    }
+}
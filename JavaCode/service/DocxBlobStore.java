@@ -0,0 +1,191 @@
+package com.documentgenerationservice.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+/**
+ * Контентно-адресуемое хранилище DOCX-файлов шаблонов на локальном диске: имя файла - SHA-256
+ * содержимого, поэтому одинаковые загрузки хранятся один раз. Файлы не меняются после записи;
+ * учет ссылок и удаление - в DocxBlobService. При рендеринге файл отображается в память.
+ */
+@Component
+public class DocxBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocxBlobStore.class);
+
+    private final Path root;
+    private final Path tempDirectory;
+
+    public DocxBlobStore(@Value("${app.blobs.dir:${java.io.tmpdir}/document-blobs}") String directory) {
+        this.root = Paths.get(directory).toAbsolutePath();
+        this.tempDirectory = root.resolve("tmp");
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(tempDirectory);
+        try (Stream<Path> leftovers = Files.list(tempDirectory)) {
+            leftovers.forEach(this::deleteQuietly);
+        }
+        logger.info("DOCX blob store at {}", root);
+    }
+
+    public static String hash(byte[] content) {
+        return HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+    /**
+     * SHA-256 файла, читается потоком
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Кладет файл под его хэшем, если такого еще нет. Запись через временный файл
+     * и атомарное переименование, поэтому читатели не видят недописанный файл.
+     */
+    public void putIfAbsent(String hash, Path source) throws IOException {
+        Path target = path(hash);
+        if (Files.exists(target)) {
+            return;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(tempDirectory, hash, ".part");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    public void putIfAbsent(String hash, byte[] content) throws IOException {
+        Path target = path(hash);
+        if (Files.exists(target)) {
+            return;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(tempDirectory, hash, ".part");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    public boolean exists(String hash) {
+        return Files.exists(path(hash));
+    }
+
+    public Path path(String hash) {
+        if (hash == null || hash.length() != 64) {
+            throw new IllegalArgumentException("Invalid DOCX blob hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash + ".docx");
+    }
+
+    public long size(String hash) throws IOException {
+        return Files.size(path(hash));
+    }
+
+    /**
+     * Поток чтения поверх отображенного в память файла: содержимое не копируется в кучу,
+     * страницы читает ОС
+     */
+    public InputStream openStream(String hash) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+            // Отображение остается действительным после закрытия канала
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (NoSuchFileException e) {
+            throw new IOException("DOCX blob " + hash + " is missing from the store", e);
+        }
+    }
+
+    public void delete(String hash) {
+        deleteQuietly(path(hash));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete DOCX blob {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
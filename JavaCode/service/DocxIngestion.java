@@ -0,0 +1,33 @@
+package com.documentgenerationservice.service;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Результат однократного разбора загруженного DOCX: все, что нужно для сохранения шаблона.
+ * docxFile - временная копия загрузки, ее удаляет вызывающий после сохранения.
+ */
+public final class DocxIngestion {
+
+    private final String content;
+    private final Map<String, String> fields;
+    private final DocxPlaceholderIndex index;
+    private final Path docxFile;
+    private final String docxHash;
+
+    DocxIngestion(String content, Map<String, String> fields, DocxPlaceholderIndex index,
+                  Path docxFile, String docxHash) {
+        this.content = content;
+        this.fields = fields;
+        this.index = index;
+        this.docxFile = docxFile;
+        this.docxHash = docxHash;
+    }
+
+    // Текст для предпросмотра
+    public String getContent() { return content; }
+    public Map<String, String> getFields() { return fields; }
+    public DocxPlaceholderIndex getIndex() { return index; }
+    public Path getDocxFile() { return docxFile; }
+    public String getDocxHash() { return docxHash; }
+}
@@ -0,0 +1,235 @@
+package com.documentgenerationservice.service;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFFooter;
+import org.apache.poi.xwpf.usermodel.XWPFHeader;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Индекс параграфов DOCX-шаблона, в которых есть переменные, вместе с положением переменных
+ * в run (RunSpans). Строится один раз на шаблон, после чего экспорт обрабатывает только эти
+ * параграфы и только затронутые run.
+ */
+public final class DocxPlaceholderIndex {
+
+    public enum Part { BODY, TABLE, HEADER, FOOTER }
+
+    /**
+     * Положение параграфа в документе. Для таблиц container - номер таблицы в allTables,
+     * для колонтитулов - номер header/footer, для тела документа не используется.
+     */
+    public static final class Location {
+        private final Part part;
+        private final int container;
+        private final int row;
+        private final int cell;
+        private final int paragraph;
+        private final RunSpans spans;
+
+        Location(Part part, int container, int row, int cell, int paragraph, RunSpans spans) {
+            this.part = part;
+            this.container = container;
+            this.row = row;
+            this.cell = cell;
+            this.paragraph = paragraph;
+            this.spans = spans;
+        }
+
+        public Part getPart() { return part; }
+        public int getContainer() { return container; }
+        public int getRow() { return row; }
+        public int getCell() { return cell; }
+        public int getParagraph() { return paragraph; }
+        public RunSpans getSpans() { return spans; }
+    }
+
+    /**
+     * Параграф конкретного документа и разметка его переменных
+     */
+    public static final class Target {
+        private final XWPFParagraph paragraph;
+        private final RunSpans spans;
+
+        Target(XWPFParagraph paragraph, RunSpans spans) {
+            this.paragraph = paragraph;
+            this.spans = spans;
+        }
+
+        public XWPFParagraph getParagraph() { return paragraph; }
+        public RunSpans getSpans() { return spans; }
+    }
+
+    private final List<Location> locations;
+    private final Set<String> fieldNames;
+
+    private DocxPlaceholderIndex(List<Location> locations) {
+        this.locations = Collections.unmodifiableList(locations);
+        Set<String> names = new LinkedHashSet<>();
+        for (Location location : locations) {
+            names.addAll(location.spans.getFieldNames());
+        }
+        this.fieldNames = Collections.unmodifiableSet(names);
+    }
+
+    public static DocxPlaceholderIndex build(XWPFDocument document) {
+        List<Location> locations = new ArrayList<>();
+
+        List<XWPFParagraph> paragraphs = document.getParagraphs();
+        for (int p = 0; p < paragraphs.size(); p++) {
+            addIfHasPlaceholders(locations, paragraphs.get(p), Part.BODY, 0, 0, 0, p);
+        }
+
+        List<XWPFTable> tables = allTables(document);
+        for (int t = 0; t < tables.size(); t++) {
+            List<XWPFTableRow> rows = tables.get(t).getRows();
+            for (int r = 0; r < rows.size(); r++) {
+                List<XWPFTableCell> cells = rows.get(r).getTableCells();
+                for (int c = 0; c < cells.size(); c++) {
+                    List<XWPFParagraph> cellParagraphs = cells.get(c).getParagraphs();
+                    for (int p = 0; p < cellParagraphs.size(); p++) {
+                        addIfHasPlaceholders(locations, cellParagraphs.get(p), Part.TABLE, t, r, c, p);
+                    }
+                }
+            }
+        }
+
+        List<XWPFHeader> headers = document.getHeaderList();
+        for (int h = 0; h < headers.size(); h++) {
+            List<XWPFParagraph> headerParagraphs = headers.get(h).getParagraphs();
+            for (int p = 0; p < headerParagraphs.size(); p++) {
+                addIfHasPlaceholders(locations, headerParagraphs.get(p), Part.HEADER, h, 0, 0, p);
+            }
+        }
+
+        List<XWPFFooter> footers = document.getFooterList();
+        for (int f = 0; f < footers.size(); f++) {
+            List<XWPFParagraph> footerParagraphs = footers.get(f).getParagraphs();
+            for (int p = 0; p < footerParagraphs.size(); p++) {
+                addIfHasPlaceholders(locations, footerParagraphs.get(p), Part.FOOTER, f, 0, 0, p);
+            }
+        }
+
+        return new DocxPlaceholderIndex(locations);
+    }
+
+    /**
+     * Находит проиндексированные параграфы в свежеразобранной копии того же шаблона.
+     * Возвращает null, если структура документа не совпадает с индексом.
+     */
+    public List<Target> resolve(XWPFDocument document) {
+        List<Target> result = new ArrayList<>(locations.size());
+        List<XWPFTable> tables = null;
+        try {
+            for (Location location : locations) {
+                XWPFParagraph paragraph;
+                switch (location.part) {
+                    case BODY:
+                        paragraph = document.getParagraphs().get(location.paragraph);
+                        break;
+                    case TABLE:
+                        if (tables == null) {
+                            tables = allTables(document);
+                        }
+                        paragraph = tables.get(location.container)
+                                .getRow(location.row)
+                                .getCell(location.cell)
+                                .getParagraphs().get(location.paragraph);
+                        break;
+                    case HEADER:
+                        paragraph = document.getHeaderList().get(location.container)
+                                .getParagraphs().get(location.paragraph);
+                        break;
+                    case FOOTER:
+                        paragraph = document.getFooterList().get(location.container)
+                                .getParagraphs().get(location.paragraph);
+                        break;
+                    default:
+                        return null;
+                }
+                if (paragraph == null) {
+                    return null;
+                }
+                result.add(new Target(paragraph, location.spans));
+            }
+        } catch (IndexOutOfBoundsException | NullPointerException e) {
+            return null;
+        }
+        return result;
+    }
+
+    public List<Location> getLocations() {
+        return locations;
+    }
+
+    /**
+     * Все переменные шаблона, включая колонтитулы
+     */
+    public Set<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    public boolean isEmpty() {
+        return locations.isEmpty();
+    }
+
+    /**
+     * Все таблицы документа в порядке обхода в глубину: таблицы тела вместе с вложенными,
+     * затем таблицы колонтитулов. Потоковый движок заменяет переменные в любом w:p,
+     * поэтому и здесь не пропускается ни одна таблица.
+     */
+    private static List<XWPFTable> allTables(XWPFDocument document) {
+        List<XWPFTable> tables = new ArrayList<>();
+        addTables(tables, document.getTables());
+        for (XWPFHeader header : document.getHeaderList()) {
+            addTables(tables, header.getTables());
+        }
+        for (XWPFFooter footer : document.getFooterList()) {
+            addTables(tables, footer.getTables());
+        }
+        return tables;
+    }
+
+    private static void addTables(List<XWPFTable> result, List<XWPFTable> tables) {
+        for (XWPFTable table : tables) {
+            result.add(table);
+            for (XWPFTableRow row : table.getRows()) {
+                for (XWPFTableCell cell : row.getTableCells()) {
+                    addTables(result, cell.getTables());
+                }
+            }
+        }
+    }
+
+    /**
+     * Параграф попадает в индекс, только если переменная есть в тексте его run
+     * (как и раньше, берется первый w:t каждого run)
+     */
+    private static void addIfHasPlaceholders(List<Location> locations, XWPFParagraph paragraph,
+                                             Part part, int container, int row, int cell, int index) {
+        String text = paragraph.getText();
+        if (text == null || !text.contains("${")) {
+            return;
+        }
+
+        List<XWPFRun> runs = paragraph.getRuns();
+        List<String> runTexts = new ArrayList<>(runs.size());
+        for (XWPFRun run : runs) {
+            runTexts.add(run.getText(0));
+        }
+
+        RunSpans spans = RunSpans.of(runTexts);
+        if (spans != null) {
+            locations.add(new Location(part, container, row, cell, index, spans));
+        }
+    }
+}
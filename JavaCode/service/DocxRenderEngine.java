@@ -0,0 +1,22 @@
+package com.documentgenerationservice.service;
+
+/**
+ * Способ рендеринга DOCX-шаблонов
+ */
+public enum DocxRenderEngine {
+    /** Полный разбор документа через Apache POI (XWPFDocument) */
+    POI,
+    /** Потоковая переработка zip-архива: меняются только document.xml, header*.xml и footer*.xml */
+    STREAMING;
+
+    public static DocxRenderEngine fromString(String value, DocxRenderEngine defaultEngine) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultEngine;
+        }
+        try {
+            return DocxRenderEngine.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown DOCX render engine: " + value);
+        }
+    }
+}
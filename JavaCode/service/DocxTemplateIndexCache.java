@@ -0,0 +1,32 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.TemplateVersion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш индексов переменных DOCX-шаблонов. Ключ совпадает с ключом CompiledTemplateCache
+ * (id неизменяемой версии), поэтому индекс не устаревает.
+ */
+@Component
+public class DocxTemplateIndexCache {
+
+    private final BoundedCache<String, DocxPlaceholderIndex> cache;
+
+    public DocxTemplateIndexCache(@Value("${app.docx-index-cache.max-size:128}") int maxSize) {
+        this.cache = new BoundedCache<>(maxSize);
+    }
+
+    public DocxPlaceholderIndex get(TemplateVersion version) {
+        if (version.getId() == null) {
+            return null;
+        }
+        return cache.get(CompiledTemplateCache.keyOf(version));
+    }
+
+    public void put(TemplateVersion version, DocxPlaceholderIndex index) {
+        if (version.getId() != null) {
+            cache.put(CompiledTemplateCache.keyOf(version), index);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.DocumentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фоновая задача экспорта. Статус использует те же значения, что и Document.status.
+ */
+public class ExportJob {
+    private final String id;
+    private final Long documentId;
+    private final Long userId;
+    private final ExportFormat format;
+    private final DocxRenderEngine engine;
+    private final LocalDateTime createdAt;
+
+    private volatile String status;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+    private volatile ExportedFile result;
+
+    public ExportJob(String id, Long documentId, Long userId, ExportFormat format, DocxRenderEngine engine) {
+        this.id = id;
+        this.documentId = documentId;
+        this.userId = userId;
+        this.format = format;
+        this.engine = engine;
+        this.createdAt = LocalDateTime.now();
+        this.status = DocumentStatus.EXPORT_QUEUED;
+    }
+
+    void markRunning() {
+        this.status = DocumentStatus.EXPORTING;
+    }
+
+    void markCompleted(ExportedFile result) {
+        this.result = result;
+        this.finishedAt = LocalDateTime.now();
+        this.status = DocumentStatus.EXPORTED;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+        this.status = DocumentStatus.EXPORT_FAILED;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public String getId() { return id; }
+    public Long getDocumentId() { return documentId; }
+    public Long getUserId() { return userId; }
+    public ExportFormat getFormat() { return format; }
+    public DocxRenderEngine getEngine() { return engine; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public String getStatus() { return status; }
+    public String getError() { return error; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public ExportedFile getResult() { return result; }
+}
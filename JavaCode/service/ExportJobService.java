@@ -0,0 +1,132 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.DocumentStatus;
+import com.documentgenerationservice.repository.DocumentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронный экспорт документов на отдельном ограниченном пуле потоков,
+ * чтобы тяжелые POI/PDFBox-операции не занимали потоки Tomcat.
+ */
+@Service
+public class ExportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportJobService.class);
+
+    @Autowired
+    private DocumentExportService documentExportService;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final long resultTtlMinutes;
+
+    public ExportJobService(@Value("${app.export.workers:0}") int workers,
+                            @Value("${app.export.queue-capacity:100}") int queueCapacity,
+                            @Value("${app.export.result-ttl-minutes:15}") long resultTtlMinutes) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.resultTtlMinutes = resultTtlMinutes;
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("export-worker-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Ставит экспорт в очередь. Бросает RejectedExecutionException, если очередь заполнена.
+     */
+    public ExportJob submit(Long documentId, Long userId, ExportFormat format, DocxRenderEngine engine) {
+        purgeExpiredJobs();
+
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), documentId, userId, format, engine);
+        jobs.put(job.getId(), job);
+
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            logger.warn("Export queue is full, rejecting export of document {}", documentId);
+            throw e;
+        }
+
+        synchronized (job) {
+            if (DocumentStatus.EXPORT_QUEUED.equals(job.getStatus())) {
+                updateDocumentStatus(job);
+            }
+        }
+        return job;
+    }
+
+    public Optional<ExportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void run(ExportJob job) {
+        synchronized (job) {
+            job.markRunning();
+            updateDocumentStatus(job);
+        }
+
+        ExportedFile file = null;
+        String error = null;
+        try {
+            file = documentExportService.exportById(job.getDocumentId(), job.getFormat(), job.getEngine());
+            logger.info("Export job {} for document {} completed", job.getId(), job.getDocumentId());
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            logger.error("Export job {} for document {} failed: {}", job.getId(), job.getDocumentId(), error);
+        }
+
+        // Статус в БД и в памяти меняются под одной блокировкой, чтобы не перезаписать более новый
+        synchronized (job) {
+            if (file != null) {
+                job.markCompleted(file);
+            } else {
+                job.markFailed(error);
+            }
+            updateDocumentStatus(job);
+        }
+    }
+
+    private void updateDocumentStatus(ExportJob job) {
+        try {
+            documentRepository.updateStatus(job.getDocumentId(), job.getStatus());
+        } catch (Exception e) {
+            logger.warn("Could not update status of document {}: {}", job.getDocumentId(), e.getMessage());
+        }
+    }
+
+    private void purgeExpiredJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(resultTtlMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,26 @@
+package com.documentgenerationservice.service;
+
+import java.nio.file.Path;
+
+/**
+ * Результат экспорта документа - файл в хранилище артефактов
+ */
+public class ExportedFile {
+    private final String fileName;
+    private final ExportFormat format;
+    private final Path path;
+    private final String contentHash;
+
+    public ExportedFile(String fileName, ExportFormat format, Path path, String contentHash) {
+        this.fileName = fileName;
+        this.format = format;
+        this.path = path;
+        this.contentHash = contentHash;
+    }
+
+    public String getFileName() { return fileName; }
+    public ExportFormat getFormat() { return format; }
+    public Path getPath() { return path; }
+    public String getContentHash() { return contentHash; }
+    public String getContentType() { return format.getContentType(); }
+}
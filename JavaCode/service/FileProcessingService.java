@@ -1,66 +1,159 @@
 package com.documentgenerationservice.service;
 
+import com.documentgenerationservice.model.TemplateVersion;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xwpf.usermodel.*;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 public class FileProcessingService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileProcessingService.class);
 
-    public String extractTextFromDocx(MultipartFile file) throws IOException {
-        StringBuilder content = new StringBuilder();
+    // Разделитель строк в слитом TXT: перевод страницы при печати
+    private static final String TEXT_PAGE_BREAK = "\f\n";
+
+    @Autowired
+    private CompiledTemplateCache compiledTemplateCache;
+
+    @Autowired
+    private DocxTemplateIndexCache docxTemplateIndexCache;
+
+    @Autowired
+    private StreamingDocxRenderer streamingDocxRenderer;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private PdfFontRegistry pdfFontRegistry;
+
+    @Autowired
+    private DocxBlobStore docxBlobStore;
+
+    @Autowired
+    private RenderingBulkhead renderingBulkhead;
+
+    @Value("${app.docx.engine:poi}")
+    private String defaultDocxEngine;
 
+    @Value("${app.pdf.max-memory-kb:4096}")
+    private long pdfMaxMemoryKb;
+
+    @Value("${app.merge.chunk-rows:64}")
+    private int mergeChunkRows;
+
+    public String extractTextFromDocx(MultipartFile file) throws IOException {
         logger.info("Starting DOCX extraction for file: {}", file.getOriginalFilename());
 
+        String size = GenerationMetrics.sizeBucket(file.getSize());
+        metrics.recordInput(GenerationMetrics.UPLOAD_DOCX, size, file.getSize());
+
         try (InputStream inputStream = file.getInputStream();
-             XWPFDocument document = new XWPFDocument(inputStream)) {
+             XWPFDocument document = metrics.time(GenerationMetrics.DOCX_PARSE, GenerationMetrics.UPLOAD_DOCX, size,
+                     () -> new XWPFDocument(inputStream))) {
+            return extractText(document);
+        } catch (Exception e) {
+            logger.error("Error extracting text from DOCX: {}", e.getMessage());
+            throw new IOException("Failed to extract text from DOCX file: " + e.getMessage(), e);
+        }
+    }
 
-            // Читаем параграфы
-            for (XWPFParagraph paragraph : document.getParagraphs()) {
-                String text = paragraph.getText();
-                if (text != null && !text.trim().isEmpty()) {
-                    content.append(text).append("\n");
+    /**
+     * Разбирает загруженный DOCX один раз: multipart сохраняется во временный файл, документ
+     * открывается с диска только для чтения, и за этот разбор получаются текст для предпросмотра,
+     * переменные (включая колонтитулы) и индекс переменных для экспорта. Временный файл
+     * возвращается вызывающему для записи в DocxBlobStore.
+     */
+    public DocxIngestion ingestDocx(MultipartFile file) throws IOException {
+        logger.info("Ingesting DOCX file: {}", file.getOriginalFilename());
+
+        String size = GenerationMetrics.sizeBucket(file.getSize());
+        String operation = GenerationMetrics.UPLOAD_DOCX;
+        metrics.recordInput(operation, size, file.getSize());
+
+        Path tempFile = Files.createTempFile("docx-upload-", ".docx");
+        try {
+            // Если контейнер уже сохранил часть на диск, файл переносится без чтения в память
+            file.transferTo(tempFile);
+
+            try (XWPFDocument document = metrics.time(GenerationMetrics.DOCX_PARSE, operation, size,
+                    () -> new XWPFDocument(OPCPackage.open(tempFile.toFile(), PackageAccess.READ)))) {
+
+                String content = extractText(document);
+                DocxPlaceholderIndex index = metrics.time(GenerationMetrics.PLACEHOLDER_SCAN, operation, size,
+                        () -> DocxPlaceholderIndex.build(document));
+
+                Map<String, String> fields = new HashMap<>();
+                for (String field : index.getFieldNames()) {
+                    fields.put(field, "text");
                 }
+
+                logger.info("Ingested DOCX: {} characters of preview, {} fields", content.length(), fields.size());
+                return new DocxIngestion(content, fields, index, tempFile, DocxBlobStore.hash(tempFile));
             }
+        } catch (Exception e) {
+            Files.deleteIfExists(tempFile);
+            logger.error("Error ingesting DOCX: {}", e.getMessage());
+            throw new IOException("Failed to process DOCX file: " + e.getMessage(), e);
+        }
+    }
 
-            // Читаем таблицы
-            for (XWPFTable table : document.getTables()) {
-                for (XWPFTableRow row : table.getRows()) {
-                    for (XWPFTableCell cell : row.getTableCells()) {
-                        String cellText = cell.getText();
-                        if (cellText != null && !cellText.trim().isEmpty()) {
-                            content.append(cellText).append("\t");
-                        }
+    /**
+     * Текст для предпросмотра: непустые параграфы тела и ячейки таблиц
+     */
+    private String extractText(XWPFDocument document) {
+        StringBuilder content = new StringBuilder();
+
+        // Читаем параграфы
+        for (XWPFParagraph paragraph : document.getParagraphs()) {
+            String text = paragraph.getText();
+            if (text != null && !text.trim().isEmpty()) {
+                content.append(text).append("\n");
+            }
+        }
+
+        // Читаем таблицы
+        for (XWPFTable table : document.getTables()) {
+            for (XWPFTableRow row : table.getRows()) {
+                for (XWPFTableCell cell : row.getTableCells()) {
+                    String cellText = cell.getText();
+                    if (cellText != null && !cellText.trim().isEmpty()) {
+                        content.append(cellText).append("\t");
                     }
-                    content.append("\n");
                 }
+                content.append("\n");
             }
-
-            logger.info("Successfully extracted {} characters from DOCX", content.length());
-        } catch (Exception e) {
-            logger.error("Error extracting text from DOCX: {}", e.getMessage());
-            throw new IOException("Failed to extract text from DOCX file: " + e.getMessage(), e);
         }
 
+        logger.info("Successfully extracted {} characters from DOCX", content.length());
         return content.toString();
     }
 
@@ -72,15 +165,16 @@ public class FileProcessingService {
             return fields;
         }
 
-        Pattern pattern = Pattern.compile("\\$\\{([^}]+)\\}");
-        Matcher matcher = pattern.matcher(content);
-
-        int fieldCount = 0;
-        while (matcher.find()) {
-            String fieldName = matcher.group(1);
-            fields.put(fieldName, "text");
-            fieldCount++;
-        }
+        int fieldCount = metrics.time(GenerationMetrics.PLACEHOLDER_SCAN, GenerationMetrics.UPLOAD_DOCX,
+                GenerationMetrics.sizeBucket(content.length()), () -> {
+                    Matcher matcher = CompiledTemplate.PLACEHOLDER_PATTERN.matcher(content);
+                    int count = 0;
+                    while (matcher.find()) {
+                        fields.put(matcher.group(1), "text");
+                        count++;
+                    }
+                    return count;
+                });
 
         logger.info("Extracted {} fields from content", fieldCount);
         return fields;
@@ -96,34 +190,8 @@ public class FileProcessingService {
 
             logger.info("Processing DOCX template with {} data fields", data.size());
 
-            // Обрабатываем параграфы
-            for (XWPFParagraph paragraph : document.getParagraphs()) {
-                replaceVariablesInParagraph(paragraph, data);
-            }
-
-            // Обрабатываем таблицы
-            for (XWPFTable table : document.getTables()) {
-                for (XWPFTableRow row : table.getRows()) {
-                    for (XWPFTableCell cell : row.getTableCells()) {
-                        for (XWPFParagraph paragraph : cell.getParagraphs()) {
-                            replaceVariablesInParagraph(paragraph, data);
-                        }
-                    }
-                }
-            }
-
-            // Обрабатываем headers
-            for (XWPFHeader header : document.getHeaderList()) {
-                for (XWPFParagraph paragraph : header.getParagraphs()) {
-                    replaceVariablesInParagraph(paragraph, data);
-                }
-            }
-
-            // Обрабатываем footers
-            for (XWPFFooter footer : document.getFooterList()) {
-                for (XWPFParagraph paragraph : footer.getParagraphs()) {
-                    replaceVariablesInParagraph(paragraph, data);
-                }
+            for (DocxPlaceholderIndex.Target target : DocxPlaceholderIndex.build(document).resolve(document)) {
+                replaceVariablesInParagraph(target.getParagraph(), target.getSpans(), data);
             }
 
             document.write(outputStream);
@@ -136,43 +204,136 @@ public class FileProcessingService {
         }
     }
 
+    public DocxRenderEngine getDefaultDocxEngine() {
+        return DocxRenderEngine.fromString(defaultDocxEngine, DocxRenderEngine.POI);
+    }
+
     /**
-     * Заменяет переменные в параграфе с сохранением форматирования
+     * Генерирует DOCX из сохраненного шаблона выбранным движком
      */
-    private void replaceVariablesInParagraph(XWPFParagraph paragraph, Map<String, String> data) {
-        String paragraphText = paragraph.getText();
-        if (paragraphText == null || !paragraphText.contains("${")) {
-            return; // Нет переменных для замены
+    public byte[] generateDocxFromTemplate(TemplateVersion version, Map<String, String> data,
+                                           DocxRenderEngine engine) throws IOException {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            writeDocxFromTemplate(version, data, engine, outputStream);
+            return outputStream.toByteArray();
         }
+    }
 
-        // Получаем все runs в параграфе
-        List<XWPFRun> runs = paragraph.getRuns();
-        if (runs.isEmpty()) {
-            return;
+    public byte[] generateDocxFromTemplate(TemplateVersion version, Map<String, String> data) throws IOException {
+        return generateDocxFromTemplate(version, data, DocxRenderEngine.POI);
+    }
+
+    /**
+     * Пишет DOCX из сохраненного шаблона прямо в поток (файл артефакта, ответ), без копии в byte[].
+     * Поток не закрывается.
+     */
+    public void writeDocxFromTemplate(TemplateVersion version, Map<String, String> data, DocxRenderEngine engine,
+                                      OutputStream outputStream) throws IOException {
+        if (engine == DocxRenderEngine.STREAMING) {
+            writeDocxStreaming(version, data, outputStream);
+        } else {
+            writeDocxWithPoi(version, data, outputStream);
         }
+    }
 
-        // Собираем весь текст параграфа
-        StringBuilder fullText = new StringBuilder();
-        for (XWPFRun run : runs) {
-            String text = run.getText(0);
-            if (text != null) {
-                fullText.append(text);
-            }
+    private void writeDocxStreaming(TemplateVersion version, Map<String, String> data,
+                                    OutputStream outputStream) throws IOException {
+        String hash = version.getDocxBlobHash();
+        long length = docxBlobStore.size(hash);
+        String size = GenerationMetrics.sizeBucket(length);
+        metrics.recordInput(GenerationMetrics.EXPORT_DOCX, size, length);
+
+        try {
+            NonClosingOutputStream countingStream = new NonClosingOutputStream(outputStream);
+            metrics.time(GenerationMetrics.DOCX_STREAM, GenerationMetrics.EXPORT_DOCX, size, () -> {
+                streamingDocxRenderer.render(docxBlobStore.path(hash), data, countingStream);
+                return null;
+            });
+            metrics.recordOutput(GenerationMetrics.EXPORT_DOCX, size, countingStream.getCount());
+        } catch (Exception e) {
+            logger.error("Error generating DOCX from template with streaming engine: {}", e.getMessage());
+            throw new IOException("Failed to generate DOCX from template", e);
         }
+    }
 
-        String originalText = fullText.toString();
-        String processedText = processTemplate(originalText, data);
+    /**
+     * DOCX через POI. Положение переменных берется из кэша,
+     * поэтому повторный экспорт не обходит весь документ в поисках "${".
+     */
+    private void writeDocxWithPoi(TemplateVersion version, Map<String, String> data,
+                                  OutputStream outputStream) throws IOException {
+        String hash = version.getDocxBlobHash();
+        long length = docxBlobStore.size(hash);
+        String size = GenerationMetrics.sizeBucket(length);
+        String operation = GenerationMetrics.EXPORT_DOCX;
+        metrics.recordInput(operation, size, length);
+
+        // Шаблон читается из отображенного в память файла хранилища
+        try (InputStream inputStream = docxBlobStore.openStream(hash);
+             XWPFDocument document = metrics.time(GenerationMetrics.DOCX_PARSE, operation, size,
+                     () -> new XWPFDocument(inputStream))) {
+
+            List<DocxPlaceholderIndex.Target> targets = metrics.time(GenerationMetrics.PLACEHOLDER_SCAN,
+                    operation, size, () -> resolveTargets(version, document));
+
+            logger.info("Processing DOCX template {} v{} with {} data fields, {} paragraphs with variables",
+                    version.getTemplateId(), version.getNumber(), data.size(), targets.size());
+
+            metrics.time(GenerationMetrics.SUBSTITUTION, operation, size, () -> {
+                for (DocxPlaceholderIndex.Target target : targets) {
+                    replaceVariablesInParagraph(target.getParagraph(), target.getSpans(), data);
+                }
+                return null;
+            });
 
-        // Если текст изменился, заменяем его
-        if (!originalText.equals(processedText)) {
-            // Очищаем все runs
+            NonClosingOutputStream countingStream = new NonClosingOutputStream(outputStream);
+            metrics.time(GenerationMetrics.SERIALIZATION, operation, size, () -> {
+                document.write(countingStream);
+                return null;
+            });
+            metrics.recordOutput(operation, size, countingStream.getCount());
+
+        } catch (Exception e) {
+            logger.error("Error generating DOCX from template: {}", e.getMessage());
+            throw new IOException("Failed to generate DOCX from template", e);
+        }
+    }
+
+    private List<DocxPlaceholderIndex.Target> resolveTargets(TemplateVersion version, XWPFDocument document) {
+        DocxPlaceholderIndex index = docxTemplateIndexCache.get(version);
+        List<DocxPlaceholderIndex.Target> targets = index != null ? index.resolve(document) : null;
+        if (targets == null) {
+            index = DocxPlaceholderIndex.build(document);
+            docxTemplateIndexCache.put(version, index);
+            targets = index.resolve(document);
+        }
+        return targets;
+    }
+
+    /**
+     * Заменяет переменные в параграфе с сохранением форматирования: переписываются только run,
+     * которые занимает переменная, значение получает форматирование run с ее началом
+     */
+    private void replaceVariablesInParagraph(XWPFParagraph paragraph, RunSpans spans, Map<String, String> data) {
+        List<XWPFRun> runs = paragraph.getRuns();
+        String[] texts = spans.apply(runs.size(), index -> runs.get(index).getText(0), data);
+        if (texts == null) {
+            // Разметка из кэша не подходит к параграфу - размечаем его заново
+            List<String> runTexts = new ArrayList<>(runs.size());
             for (XWPFRun run : runs) {
-                run.setText("", 0);
+                runTexts.add(run.getText(0));
+            }
+            RunSpans actualSpans = RunSpans.of(runTexts);
+            texts = actualSpans != null ? actualSpans.apply(runs.size(), runTexts::get, data) : null;
+            if (texts == null) {
+                return;
             }
+        }
 
-            // Вставляем обработанный текст в первый run с сохранением форматирования
-            XWPFRun firstRun = runs.get(0);
-            firstRun.setText(processedText, 0);
+        for (int i = 0; i < texts.length; i++) {
+            if (texts[i] != null) {
+                runs.get(i).setText(texts[i], 0);
+            }
         }
     }
 
@@ -180,11 +341,41 @@ public class FileProcessingService {
      * Альтернативный метод - создает DOCX из текстового шаблона с базовым форматированием
      */
     public byte[] generateDocxFromTextTemplate(String templateContent, Map<String, String> data) throws IOException {
-        try (XWPFDocument document = new XWPFDocument();
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            writeDocxFromText(processTemplate(templateContent, data), outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    public byte[] generateDocxFromTextTemplate(TemplateVersion version, Map<String, String> data) throws IOException {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            writeDocxFromTextTemplate(version, data, outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * То же самое, но берет скомпилированный шаблон из кэша и пишет DOCX прямо в поток
+     */
+    public void writeDocxFromTextTemplate(TemplateVersion version, Map<String, String> data,
+                                          OutputStream outputStream) throws IOException {
+        String content = version.getContent() != null ? version.getContent() : "";
+        String size = GenerationMetrics.sizeBucket(content.length());
+        String operation = GenerationMetrics.EXPORT_DOCX;
+        metrics.recordInput(operation, size, content.length());
+
+        String processedContent = metrics.time(GenerationMetrics.SUBSTITUTION, operation, size,
+                () -> compiledTemplateCache.get(version).render(data));
+        NonClosingOutputStream countingStream = new NonClosingOutputStream(outputStream);
+        metrics.time(GenerationMetrics.SERIALIZATION, operation, size, () -> {
+            writeDocxFromText(processedContent, countingStream);
+            return null;
+        });
+        metrics.recordOutput(operation, size, countingStream.getCount());
+    }
 
-            // Обрабатываем шаблон
-            String processedContent = processTemplate(templateContent, data);
+    private void writeDocxFromText(String processedContent, OutputStream outputStream) throws IOException {
+        try (XWPFDocument document = new XWPFDocument()) {
 
             // Разбиваем на строки и сохраняем структуру
             String[] lines = processedContent.split("\n");
@@ -233,64 +424,220 @@ public class FileProcessingService {
 
             document.write(outputStream);
             logger.info("DOCX generated from text template with {} lines", lines.length);
-            return outputStream.toByteArray();
         }
     }
 
     public byte[] generatePdfDocument(String content) throws IOException {
-        try (PDDocument document = new PDDocument();
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            writePdfDocument(content, outputStream);
+            return outputStream.toByteArray();
+        }
+    }
 
-            PDPage page = new PDPage();
-            document.addPage(page);
-
-            try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
-                contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA, 12);
-                contentStream.newLineAtOffset(50, 750);
-
-                String[] lines = content.split("\n");
-                for (String line : lines) {
-                    if (line.length() > 100) {
-                        String[] parts = splitLongLine(line, 80);
-                        for (String part : parts) {
-                            contentStream.showText(part);
-                            contentStream.newLineAtOffset(0, -15);
-                        }
-                    } else {
-                        contentStream.showText(line);
-                        contentStream.newLineAtOffset(0, -15);
+    /**
+     * Раскладывает текст по страницам и пишет PDF прямо в поток. Содержимое страниц
+     * во время раскладки хранится во временном файле PDFBox сверх лимита app.pdf.max-memory-kb,
+     * поэтому документ на тысячи страниц не раздувает кучу.
+     */
+    public void writePdfDocument(String content, OutputStream outputStream) throws IOException {
+        writePdfDocument(content, PdfPageLayer.EMPTY, outputStream);
+    }
+
+    /**
+     * То же с шаблонным слоем страницы: он рисуется в документе один раз как form XObject
+     * и ставится на каждую страницу
+     */
+    public void writePdfDocument(String content, PdfPageLayer pageLayer, OutputStream outputStream) throws IOException {
+        String text = content != null ? content : "";
+        String size = GenerationMetrics.sizeBucket(text.length());
+        String operation = GenerationMetrics.EXPORT_PDF;
+        metrics.recordInput(operation, size, text.length());
+
+        // Шрифты возвращаются в реестр после save(): подмножество глифов встраивается при сохранении
+        try (PDDocument document = new PDDocument(MemoryUsageSetting.setupMixed(pdfMaxMemoryKb * 1024L));
+             PdfFontRegistry.Fonts fonts = pdfFontRegistry.acquire(document)) {
+            int pages = metrics.time(GenerationMetrics.PDF_LAYOUT, operation, size, () -> {
+                try (PdfLayoutEngine layout = new PdfLayoutEngine(document, fonts.getRegular(), fonts.getBold())) {
+                    if (pageLayer != null && !pageLayer.isEmpty()) {
+                        layout.setPageStamp(pageLayer.createStamp(document, fonts.getRegular(),
+                                PdfLayoutEngine.PAGE_SIZE, PdfLayoutEngine.MARGIN));
                     }
+                    layout.writeText(text);
+                    return layout.getPageCount();
                 }
-
-                contentStream.endText();
-            }
-
-            document.save(outputStream);
-            return outputStream.toByteArray();
+            });
+
+            NonClosingOutputStream countingStream = new NonClosingOutputStream(outputStream);
+            metrics.time(GenerationMetrics.SERIALIZATION, operation, size, () -> {
+                document.save(countingStream);
+                return null;
+            });
+            metrics.recordOutput(operation, size, countingStream.getCount());
+            logger.info("PDF generated with {} pages, {} bytes", pages, countingStream.getCount());
         } catch (Exception e) {
             logger.error("Error generating PDF: {}", e.getMessage());
             throw new IOException("Failed to generate PDF document", e);
         }
     }
 
-    private String[] splitLongLine(String line, int maxLength) {
-        return line.split("(?<=\\G.{" + maxLength + "})");
+    /**
+     * Слияние в один DOCX: каждая строка данных - отдельный раздел документа. Текстовый шаблон
+     * сначала раскладывается в DOCX как есть, с переменными, и дальше сливается так же, как DOCX-шаблон.
+     * Строки читаются и архив пишется в потоке вызывающего, в RenderingBulkhead уходят только
+     * разбор шаблона и рендеринг порций по app.merge.chunk-rows строк. Возвращает число записанных строк.
+     */
+    public int writeMergedDocx(TemplateVersion version, Iterator<Map<String, String>> rows,
+                               OutputStream outputStream) throws IOException {
+        Path skeleton = null;
+        try {
+            Path source;
+            if (version.hasDocxFile()) {
+                source = docxBlobStore.path(version.getDocxBlobHash());
+            } else {
+                skeleton = Files.createTempFile("merge-", ".docx");
+                source = skeleton;
+                renderingBulkhead.executeToCompletion(() -> {
+                    try (OutputStream skeletonOutput = Files.newOutputStream(source)) {
+                        writeDocxFromText(version.getContent() != null ? version.getContent() : "", skeletonOutput);
+                    }
+                    return null;
+                });
+            }
+
+            try (StreamingDocxRenderer.Merge merge = streamingDocxRenderer.openMerge(source)) {
+                // До start в ответ ничего не записано, поэтому отказ пула здесь еще становится 503
+                renderingBulkhead.executeToCompletion(() -> {
+                    merge.prepare();
+                    return null;
+                });
+                merge.start(outputStream);
+                for (List<Map<String, String>> chunk = nextChunk(rows); !chunk.isEmpty(); chunk = nextChunk(rows)) {
+                    List<Map<String, String>> current = chunk;
+                    renderingBulkhead.executeBlocking(() -> {
+                        merge.render(current);
+                        return null;
+                    });
+                    merge.drain();
+                }
+                return merge.finish();
+            }
+        } finally {
+            if (skeleton != null) {
+                Files.deleteIfExists(skeleton);
+            }
+        }
+    }
+
+    /**
+     * Слияние в один PDF: текст каждой строки данных начинается с новой страницы. Страницы
+     * раскладываются порциями строк в RenderingBulkhead, их содержимое сверх app.pdf.max-memory-kb
+     * уходит во временный файл PDFBox. Документ сохраняется в пуле во временный файл,
+     * а в поток копируется в потоке вызывающего. Возвращает число записанных строк.
+     */
+    public int writeMergedPdf(TemplateVersion version, PdfPageLayer pageLayer, Iterator<Map<String, String>> rows,
+                              OutputStream outputStream) throws IOException {
+        CompiledTemplate compiledTemplate = compiledTemplateCache.get(version);
+        Path pdfFile = Files.createTempFile("merge-", ".pdf");
+
+        try {
+            int written = 0;
+            int pages;
+            try (PDDocument document = new PDDocument(MemoryUsageSetting.setupMixed(pdfMaxMemoryKb * 1024L));
+                 PdfFontRegistry.Fonts fonts = pdfFontRegistry.acquire(document)) {
+                try (PdfLayoutEngine layout = new PdfLayoutEngine(document, fonts.getRegular(), fonts.getBold())) {
+                    if (pageLayer != null && !pageLayer.isEmpty()) {
+                        layout.setPageStamp(pageLayer.createStamp(document, fonts.getRegular(),
+                                PdfLayoutEngine.PAGE_SIZE, PdfLayoutEngine.MARGIN));
+                    }
+                    for (List<Map<String, String>> chunk = nextChunk(rows); !chunk.isEmpty(); chunk = nextChunk(rows)) {
+                        List<Map<String, String>> current = chunk;
+                        boolean first = written == 0;
+                        renderMergeChunk(first, () -> {
+                            for (int i = 0; i < current.size(); i++) {
+                                if (!first || i > 0) {
+                                    layout.pageBreak();
+                                }
+                                layout.writeText(compiledTemplate.render(current.get(i)));
+                            }
+                            return null;
+                        });
+                        written += current.size();
+                    }
+                }
+
+                renderingBulkhead.executeBlocking(() -> {
+                    try (OutputStream pdfOutput = Files.newOutputStream(pdfFile)) {
+                        document.save(pdfOutput);
+                    }
+                    return null;
+                });
+                pages = document.getNumberOfPages();
+            }
+
+            long bytes = Files.copy(pdfFile, outputStream);
+            logger.info("Merged PDF generated from {} rows: {} pages, {} bytes", written, pages, bytes);
+            return written;
+        } catch (RejectedExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error generating merged PDF: {}", e.getMessage());
+            throw new IOException("Failed to generate merged PDF document", e);
+        } finally {
+            Files.deleteIfExists(pdfFile);
+        }
     }
 
-    private String processTemplate(String templateContent, Map<String, String> data) {
-        if (templateContent == null) return "";
+    /**
+     * Слияние в один TXT: тексты строк данных через перевод страницы. Тексты порции
+     * рендерятся в RenderingBulkhead, в поток пишутся в потоке вызывающего. Возвращает число записанных строк.
+     */
+    public int writeMergedText(TemplateVersion version, Iterator<Map<String, String>> rows,
+                               OutputStream outputStream) throws IOException {
+        CompiledTemplate compiledTemplate = compiledTemplateCache.get(version);
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        int written = 0;
+        for (List<Map<String, String>> chunk = nextChunk(rows); !chunk.isEmpty(); chunk = nextChunk(rows)) {
+            List<Map<String, String>> current = chunk;
+            boolean first = written == 0;
+            writer.write(renderMergeChunk(first, () -> {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < current.size(); i++) {
+                    if (!first || i > 0) {
+                        text.append(TEXT_PAGE_BREAK);
+                    }
+                    text.append(compiledTemplate.render(current.get(i)));
+                }
+                return text.toString();
+            }));
+            written += current.size();
+        }
+        writer.flush();
+        return written;
+    }
 
-        String result = templateContent;
-        Pattern pattern = Pattern.compile("\\$\\{([^}]+)\\}");
-        Matcher matcher = pattern.matcher(templateContent);
+    /**
+     * Порция слияния в RenderingBulkhead. Отказ (503) возможен только для первой порции, пока ответ
+     * не начат; следующие ждут места без таймаута, чтобы не обрывать начатый ответ.
+     * Начатая порция дорабатывает до конца: она работает с общим для слияния документом.
+     */
+    private <T> T renderMergeChunk(boolean first, RenderingBulkhead.Task<T> task) throws IOException {
+        return first ? renderingBulkhead.executeToCompletion(task) : renderingBulkhead.executeBlocking(task);
+    }
 
-        while (matcher.find()) {
-            String variableName = matcher.group(1);
-            String value = data.getOrDefault(variableName, "");
-            result = result.replace("${" + variableName + "}", value);
+    /**
+     * Следующие app.merge.chunk-rows строк; читаются в потоке вызывающего
+     */
+    private List<Map<String, String>> nextChunk(Iterator<Map<String, String>> rows) {
+        List<Map<String, String>> chunk = new ArrayList<>(mergeChunkRows);
+        while (chunk.size() < mergeChunkRows && rows.hasNext()) {
+            chunk.add(rows.next());
         }
+        return chunk;
+    }
+
+    private String processTemplate(String templateContent, Map<String, String> data) {
+        if (templateContent == null) return "";
 
-        return result;
+        return CompiledTemplate.compile(templateContent).render(data);
     }
 }
\ No newline at end of file
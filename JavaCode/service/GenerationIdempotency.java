@@ -0,0 +1,116 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Template;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Повторные запросы генерации. Ключ запроса - заголовок Idempotency-Key или, если его нет,
+ * отпечаток (шаблон, его текущая версия, хэш данных); повтор с тем же ключом того же пользователя в пределах окна
+ * возвращает уже созданный документ без рендеринга.
+ *
+ * Ключ хранится в documents.request_key под уникальным ограничением (user_id, request_key),
+ * оно же разрешает одновременные повторы. Здесь - только индекс последних ключей узла,
+ * чтобы повтор не требовал запроса к базе.
+ */
+@Component
+public class GenerationIdempotency {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String REPLAYS = "document.generate.replays";
+
+    private static final class Entry {
+        private final long documentId;
+        private final LocalDateTime createdAt;
+
+        private Entry(long documentId, LocalDateTime createdAt) {
+            this.documentId = documentId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 0 - повторы не распознаются, request_key не заполняется
+    @Value("${app.documents.idempotency.window-seconds:600}")
+    private long windowSeconds;
+
+    // Отпечаток данных для запросов без Idempotency-Key
+    @Value("${app.documents.idempotency.fingerprint:true}")
+    private boolean fingerprint;
+
+    private final BoundedCache<String, Entry> index;
+
+    private Counter replays;
+
+    public GenerationIdempotency(@Value("${app.documents.idempotency.index-max-size:10000}") int maxSize) {
+        this.index = new BoundedCache<>(maxSize);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        replays = Counter.builder(REPLAYS)
+                .description("Generate requests answered with an existing document")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ключ запроса (SHA-256) или null, если повторы для него не отслеживаются.
+     * Отпечаток включает текущую версию шаблона: после изменения шаблона те же данные
+     * дают новый документ, а не документ по прежней версии.
+     */
+    public String requestKey(String idempotencyKey, Template template, Map<String, String> data) {
+        if (windowSeconds <= 0) {
+            return null;
+        }
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return ArtifactStore.key("key", idempotencyKey.trim());
+        }
+        if (!fingerprint) {
+            return null;
+        }
+        return ArtifactStore.key("fingerprint", String.valueOf(template.getId()),
+                String.valueOf(template.getCurrentVersionId()), ArtifactStore.dataKey(data));
+    }
+
+    /**
+     * Документ из индекса, если он создан в пределах окна
+     */
+    public Long find(Long userId, String requestKey) {
+        Entry entry = index.get(indexKey(userId, requestKey));
+        return entry != null && isWithinWindow(entry.createdAt) ? entry.documentId : null;
+    }
+
+    public void record(Long userId, String requestKey, Long documentId, LocalDateTime createdAt) {
+        index.put(indexKey(userId, requestKey), new Entry(documentId, createdAt));
+    }
+
+    /**
+     * Документ удален: следующий повтор проверит базу
+     */
+    public void forget(Long userId, String requestKey) {
+        index.remove(indexKey(userId, requestKey));
+    }
+
+    public boolean isWithinWindow(LocalDateTime createdAt) {
+        return createdAt != null && createdAt.isAfter(LocalDateTime.now().minus(Duration.ofSeconds(windowSeconds)));
+    }
+
+    public void recordReplay() {
+        replays.increment();
+    }
+
+    private static String indexKey(Long userId, String requestKey) {
+        return userId + ":" + requestKey;
+    }
+}
@@ -0,0 +1,108 @@
+package com.documentgenerationservice.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики конвейера генерации: время каждого этапа и размеры входа/выхода.
+ * Таймеры публикуют гистограммы, поэтому p99 по этапам считается в Prometheus
+ * через histogram_quantile.
+ */
+@Component
+public class GenerationMetrics {
+
+    // Операции
+    public static final String GENERATE = "generate";
+    public static final String EXPORT_DOCX = "export-docx";
+    public static final String EXPORT_PDF = "export-pdf";
+    public static final String UPLOAD_DOCX = "upload-docx";
+
+    // Этапы
+    public static final String DOCX_PARSE = "docx_parse";
+    public static final String PLACEHOLDER_SCAN = "placeholder_scan";
+    public static final String SUBSTITUTION = "substitution";
+    public static final String SERIALIZATION = "serialization";
+    public static final String PDF_LAYOUT = "pdf_layout";
+    public static final String PERSIST = "persist";
+    // Потоковый движок DOCX разбирает, заменяет и пишет части архива за один проход
+    public static final String DOCX_STREAM = "docx_stream";
+
+    private static final String STAGE_TIMER = "document.generation.stage";
+    private static final String INPUT_BYTES = "document.generation.input.bytes";
+    private static final String OUTPUT_BYTES = "document.generation.output.bytes";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Тело этапа; может бросать проверяемое исключение
+     */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Корзина размера шаблона для тега size: small до 16 КБ, medium до 256 КБ, large до 4 МБ
+     */
+    public static String sizeBucket(long bytes) {
+        if (bytes < 16 * 1024) {
+            return "small";
+        }
+        if (bytes < 256 * 1024) {
+            return "medium";
+        }
+        if (bytes < 4 * 1024 * 1024) {
+            return "large";
+        }
+        return "xlarge";
+    }
+
+    /**
+     * Выполняет этап и записывает его длительность с исходом success или failure
+     */
+    public <T, E extends Exception> T time(String stage, String operation, String size, Stage<T, E> body) throws E {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = body.run();
+            success = true;
+            return result;
+        } finally {
+            Timer.builder(STAGE_TIMER)
+                    .description("Duration of a document generation pipeline stage")
+                    .tag("stage", stage)
+                    .tag("operation", operation)
+                    .tag("size", size)
+                    .tag("outcome", success ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordInput(String operation, String size, long bytes) {
+        bytesSummary(INPUT_BYTES, "Size of templates and uploads entering the pipeline", operation, size)
+                .record(bytes);
+    }
+
+    public void recordOutput(String operation, String size, long bytes) {
+        bytesSummary(OUTPUT_BYTES, "Size of documents produced by the pipeline", operation, size)
+                .record(bytes);
+    }
+
+    private DistributionSummary bytesSummary(String name, String description, String operation, String size) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("size", size)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,116 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Слияние (mail merge): один DOCX, PDF или TXT из шаблона и набора строк данных вместо документа
+ * на каждую строку. Документы не сохраняются: строки читаются из запроса потоком и порциями
+ * дописываются в результат. Чтение запроса и запись ответа остаются в потоке запроса, в RenderingBulkhead
+ * уходит только рендеринг порций, поэтому медленный клиент не держит поток пула.
+ * При занятом пуле запрос получает RejectedExecutionException до первой записи в ответ.
+ */
+@Service
+public class MailMergeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailMergeService.class);
+
+    @Autowired
+    private FileProcessingService fileProcessingService;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    @Autowired
+    private PdfPageLayerCache pdfPageLayerCache;
+
+    @Autowired
+    private RenderingBulkhead renderingBulkhead;
+
+    /**
+     * Корректные строки данных; строки с ошибкой разбора пропускаются
+     */
+    public Rows rows(Iterator<DataRowReader.DataRow> source) {
+        return new Rows(source);
+    }
+
+    /**
+     * Пишет результат слияния в поток по текущей версии шаблона. Поток не закрывается.
+     * Возвращает число слитых строк. До первой записи в поток может отказать:
+     * RejectedExecutionException (пул занят) или IllegalArgumentException (формат не поддерживается).
+     */
+    public int merge(Template template, ExportFormat format, Rows rows, OutputStream outputStream) throws IOException {
+        TemplateVersion version = templateVersionService.current(template);
+        int merged;
+        switch (format) {
+            case DOCX:
+                merged = fileProcessingService.writeMergedDocx(version, rows, outputStream);
+                break;
+            case PDF:
+                PdfPageLayer pageLayer = renderingBulkhead.executeToCompletion(() -> pdfPageLayerCache.get(version));
+                merged = fileProcessingService.writeMergedPdf(version, pageLayer, rows, outputStream);
+                break;
+            case TXT:
+                merged = fileProcessingService.writeMergedText(version, rows, outputStream);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported merge format: " + format);
+        }
+
+        logger.info("Mail merge of template {} v{} to {} finished: {} rows merged, {} skipped",
+                template.getId(), version.getNumber(), format, merged, rows.getSkipped());
+        return merged;
+    }
+
+    /**
+     * Данные корректных строк по порядку. hasNext() читает вперед до первой корректной строки,
+     * поэтому пустой набор виден до начала ответа.
+     */
+    public static final class Rows implements Iterator<Map<String, String>> {
+        private final Iterator<DataRowReader.DataRow> source;
+        private DataRowReader.DataRow next;
+        private int skipped;
+
+        private Rows(Iterator<DataRowReader.DataRow> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && source.hasNext()) {
+                DataRowReader.DataRow row = source.next();
+                if (row.isValid()) {
+                    next = row;
+                } else {
+                    skipped++;
+                    logger.warn("Mail merge skips row {}: {}", row.getNumber(), row.getError());
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map<String, String> data = next.getData();
+            next = null;
+            return data;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.documentgenerationservice.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Обертка, которая не закрывает исходный поток (его закрывает владелец, например контейнер сервлетов)
+ * и считает записанные байты
+ */
+class NonClosingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    NonClosingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,179 @@
+package com.documentgenerationservice.service;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Общий для процесса реестр шрифтов PDF. Файлы TTF читаются с диска один раз при старте,
+ * разобранные TrueTypeFont переиспользуются между документами через пул (TrueTypeFont
+ * нельзя одновременно читать из двух потоков). В документ встраивается только подмножество
+ * использованных глифов. Без Unicode-шрифта используется Helvetica, которая не кодирует кириллицу.
+ */
+@Component
+public class PdfFontRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfFontRegistry.class);
+
+    // Пары "обычный|жирный", проверяются по порядку, если пути не заданы в настройках
+    private static final List<String[]> SYSTEM_FONTS = List.of(
+            new String[]{"/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+                    "/usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf"},
+            new String[]{"/usr/share/fonts/truetype/liberation/LiberationSans-Regular.ttf",
+                    "/usr/share/fonts/truetype/liberation/LiberationSans-Bold.ttf"},
+            new String[]{"C:/Windows/Fonts/arial.ttf", "C:/Windows/Fonts/arialbd.ttf"}
+    );
+
+    private final String regularPath;
+    private final String boldPath;
+
+    private FontSource regular;
+    private FontSource bold;
+
+    public PdfFontRegistry(@Value("${app.pdf.font.regular:}") String regularPath,
+                           @Value("${app.pdf.font.bold:}") String boldPath) {
+        this.regularPath = regularPath;
+        this.boldPath = boldPath;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        String[] paths = resolvePaths();
+        if (paths == null) {
+            logger.warn("No Unicode TTF font found, PDF export falls back to Helvetica (Latin only)");
+            return;
+        }
+
+        regular = new FontSource(Paths.get(paths[0]));
+        bold = paths[1] != null && Files.isReadable(Paths.get(paths[1]))
+                ? new FontSource(Paths.get(paths[1]))
+                : regular;
+        logger.info("PDF fonts: regular {}, bold {}", regular.path, bold.path);
+    }
+
+    /**
+     * Идентификатор набора шрифтов - входит в ключ PDF-артефактов
+     */
+    public String getKey() {
+        if (regular == null) {
+            return "Helvetica";
+        }
+        return regular.path.getFileName() + ":" + regular.data.length + "|"
+                + bold.path.getFileName() + ":" + bold.data.length;
+    }
+
+    /**
+     * Выдает шрифты для документа. Закрывать после document.save(): подмножество глифов
+     * встраивается при сохранении и читает TrueTypeFont.
+     */
+    public Fonts acquire(PDDocument document) throws IOException {
+        if (regular == null) {
+            return new Fonts(PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD, List.of());
+        }
+
+        List<Lease> leases = new ArrayList<>(2);
+        Lease regularLease = regular.borrow();
+        leases.add(regularLease);
+        Lease boldLease = bold == regular ? null : bold.borrow();
+        if (boldLease != null) {
+            leases.add(boldLease);
+        }
+
+        PDFont regularFont = PDType0Font.load(document, regularLease.font, true);
+        PDFont boldFont = boldLease != null ? PDType0Font.load(document, boldLease.font, true) : regularFont;
+        return new Fonts(regularFont, boldFont, leases);
+    }
+
+    private String[] resolvePaths() {
+        if (regularPath != null && !regularPath.trim().isEmpty()) {
+            if (!Files.isReadable(Paths.get(regularPath))) {
+                throw new IllegalStateException("PDF font is not readable: " + regularPath);
+            }
+            return new String[]{regularPath, boldPath != null && !boldPath.trim().isEmpty() ? boldPath : null};
+        }
+        for (String[] candidate : SYSTEM_FONTS) {
+            if (Files.isReadable(Paths.get(candidate[0]))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Шрифты одного документа
+     */
+    public static final class Fonts implements Closeable {
+        private final PDFont regular;
+        private final PDFont bold;
+        private final List<Lease> leases;
+
+        private Fonts(PDFont regular, PDFont bold, List<Lease> leases) {
+            this.regular = regular;
+            this.bold = bold;
+            this.leases = leases;
+        }
+
+        public PDFont getRegular() { return regular; }
+        public PDFont getBold() { return bold; }
+
+        @Override
+        public void close() {
+            leases.forEach(Lease::release);
+        }
+    }
+
+    private static final class FontSource {
+        private final Path path;
+        private final byte[] data;
+        private final Queue<TrueTypeFont> pool = new ConcurrentLinkedQueue<>();
+
+        private FontSource(Path path) throws IOException {
+            this.path = path;
+            this.data = Files.readAllBytes(path);
+            // Разбираем сразу, чтобы битый файл обнаружился при старте
+            pool.add(parse());
+        }
+
+        private Lease borrow() throws IOException {
+            TrueTypeFont font = pool.poll();
+            return new Lease(this, font != null ? font : parse());
+        }
+
+        private TrueTypeFont parse() throws IOException {
+            return new TTFParser().parse(new ByteArrayInputStream(data));
+        }
+    }
+
+    private static final class Lease {
+        private final FontSource source;
+        private final TrueTypeFont font;
+
+        private Lease(FontSource source, TrueTypeFont font) {
+            this.source = source;
+            this.font = font;
+        }
+
+        private void release() {
+            source.pool.add(font);
+        }
+    }
+}
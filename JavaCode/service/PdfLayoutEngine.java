@@ -0,0 +1,287 @@
+package com.documentgenerationservice.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Раскладывает текст документа по страницам PDF: перенос по словам с учетом ширины шрифта,
+ * автоматические разрывы страниц, стили заголовков и списков как в generateDocxFromTextTemplate.
+ * Поток содержимого страницы закрывается сразу при переходе на следующую, поэтому при
+ * PDDocument с MemoryUsageSetting на временном файле готовые страницы не держатся в куче.
+ */
+public class PdfLayoutEngine implements Closeable {
+
+    /**
+     * Меняется вместе с правилами раскладки: входит в ключ PDF-артефактов
+     */
+    public static final String VERSION = "3";
+
+    static final PDRectangle PAGE_SIZE = PDRectangle.LETTER;
+    static final float MARGIN = 50;
+    private static final float LINE_SPACING = 1.25f;
+    private static final String BULLET = "• ";
+    private static final Pattern NUMBERED_ITEM = Pattern.compile("^\\d+\\.\\s.+");
+
+    enum Style {
+        HEADING1(16, true, 8),
+        HEADING2(14, true, 6),
+        LIST(11, false, 0),
+        BODY(11, false, 0);
+
+        private final float fontSize;
+        private final boolean bold;
+        private final float spaceBefore;
+
+        Style(float fontSize, boolean bold, float spaceBefore) {
+            this.fontSize = fontSize;
+            this.bold = bold;
+            this.spaceBefore = spaceBefore;
+        }
+    }
+
+    private final PDDocument document;
+    private final PDFont regularFont;
+    private final PDFont boldFont;
+    private final float contentWidth = PAGE_SIZE.getWidth() - 2 * MARGIN;
+
+    private PDPageContentStream contentStream;
+    private PdfPageLayer.Stamp stamp;
+    private float topLimit = PAGE_SIZE.getHeight() - MARGIN;
+    private float bottomLimit = MARGIN;
+    private float y;
+    private int pageCount;
+
+    public PdfLayoutEngine(PDDocument document, PDFont regularFont, PDFont boldFont) {
+        this.document = document;
+        this.regularFont = regularFont;
+        this.boldFont = boldFont;
+    }
+
+    /**
+     * Статичный слой, который рисуется под текстом на каждой странице; поля страницы
+     * расширяются под его шапку и подвал. Вызывается до первой строки.
+     */
+    public void setPageStamp(PdfPageLayer.Stamp stamp) {
+        this.stamp = stamp;
+        this.topLimit = Math.min(PAGE_SIZE.getHeight() - MARGIN, PAGE_SIZE.getHeight() - stamp.getTopReserved());
+        this.bottomLimit = Math.max(MARGIN, stamp.getBottomReserved());
+    }
+
+    public void writeText(String content) throws IOException {
+        if (content == null) {
+            return;
+        }
+        for (String line : content.split("\n", -1)) {
+            writeLine(line);
+        }
+    }
+
+    /**
+     * Одна строка текстового шаблона - один абзац
+     */
+    public void writeLine(String line) throws IOException {
+        String normalized = line.replace("\r", "").replace("\t", "    ");
+        String trimmed = normalized.trim();
+
+        if (trimmed.isEmpty()) {
+            // Пустая строка - пустой абзац
+            y -= lineHeight(Style.BODY);
+            return;
+        }
+
+        if (trimmed.startsWith("# ")) {
+            writeParagraph(trimmed.substring(2).trim(), Style.HEADING1);
+        } else if (trimmed.startsWith("## ")) {
+            writeParagraph(trimmed.substring(3).trim(), Style.HEADING2);
+        } else if (trimmed.startsWith("- ") || trimmed.startsWith("* ")) {
+            writeParagraph(BULLET + trimmed.substring(2).trim(), Style.LIST);
+        } else if (NUMBERED_ITEM.matcher(normalized).matches()) {
+            writeParagraph(normalized, Style.LIST);
+        } else {
+            writeParagraph(normalized, Style.BODY);
+        }
+    }
+
+    /**
+     * Следующий абзац начнется с новой страницы
+     */
+    public void pageBreak() throws IOException {
+        if (contentStream != null) {
+            contentStream.close();
+            contentStream = null;
+        }
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Закрывает поток последней страницы; пустой документ получает одну пустую страницу
+     */
+    @Override
+    public void close() throws IOException {
+        if (pageCount == 0) {
+            newPage();
+        }
+        if (contentStream != null) {
+            contentStream.close();
+            contentStream = null;
+        }
+    }
+
+    private void writeParagraph(String text, Style style) throws IOException {
+        PDFont font = style.bold ? boldFont : regularFont;
+        String encodable = toEncodable(text, font);
+
+        // У элементов списка строки переноса выравниваются по тексту после маркера
+        float indent = 0;
+        if (style == Style.LIST && encodable.startsWith(BULLET)) {
+            indent = textWidth(BULLET, font, style.fontSize);
+        }
+
+        if (pageCount > 0 && y < topLimit) {
+            y -= style.spaceBefore;
+        }
+
+        List<String> lines = wrap(encodable, font, style.fontSize, contentWidth, contentWidth - indent);
+        for (int i = 0; i < lines.size(); i++) {
+            float lineHeight = lineHeight(style);
+            if (contentStream == null || y - lineHeight < bottomLimit) {
+                newPage();
+            }
+            y -= lineHeight;
+
+            contentStream.beginText();
+            contentStream.setFont(font, style.fontSize);
+            contentStream.newLineAtOffset(MARGIN + (i > 0 ? indent : 0), y);
+            contentStream.showText(lines.get(i));
+            contentStream.endText();
+        }
+    }
+
+    private void newPage() throws IOException {
+        if (contentStream != null) {
+            contentStream.close();
+        }
+        PDPage page = new PDPage(PAGE_SIZE);
+        document.addPage(page);
+        contentStream = new PDPageContentStream(document, page);
+        if (stamp != null) {
+            contentStream.drawForm(stamp.getForm());
+        }
+        y = topLimit;
+        pageCount++;
+    }
+
+    /**
+     * Перенос по словам. Слово шире строки режется по символам.
+     */
+    static List<String> wrap(String text, PDFont font, float fontSize,
+                             float firstLineWidth, float otherLinesWidth) throws IOException {
+        List<String> lines = new ArrayList<>();
+        float spaceWidth = textWidth(" ", font, fontSize);
+        float maxWidth = firstLineWidth;
+
+        StringBuilder current = new StringBuilder();
+        float currentWidth = 0;
+        boolean started = false;
+
+        for (String word : text.split(" ", -1)) {
+            float wordWidth = textWidth(word, font, fontSize);
+
+            if (started && currentWidth + spaceWidth + wordWidth > maxWidth) {
+                lines.add(current.toString());
+                current.setLength(0);
+                currentWidth = 0;
+                started = false;
+                maxWidth = otherLinesWidth;
+                if (word.isEmpty()) {
+                    // Пробелы на месте переноса не переносятся на новую строку
+                    continue;
+                }
+            }
+
+            if (started) {
+                current.append(' ');
+                currentWidth += spaceWidth;
+            }
+
+            while (wordWidth > maxWidth - currentWidth && word.length() > 1) {
+                int fit = fitChars(word, font, fontSize, maxWidth - currentWidth);
+                if (fit == 0 && current.length() > 0) {
+                    lines.add(current.toString());
+                    current.setLength(0);
+                    currentWidth = 0;
+                    maxWidth = otherLinesWidth;
+                    continue;
+                }
+                fit = Math.max(fit, 1);
+                current.append(word, 0, fit);
+                lines.add(current.toString());
+                current.setLength(0);
+                currentWidth = 0;
+                maxWidth = otherLinesWidth;
+                word = word.substring(fit);
+                wordWidth = textWidth(word, font, fontSize);
+            }
+
+            current.append(word);
+            currentWidth += wordWidth;
+            started = true;
+        }
+
+        lines.add(current.toString());
+        return lines;
+    }
+
+    private static int fitChars(String word, PDFont font, float fontSize, float availableWidth) throws IOException {
+        float width = 0;
+        for (int i = 0; i < word.length(); i++) {
+            width += textWidth(String.valueOf(word.charAt(i)), font, fontSize);
+            if (width > availableWidth) {
+                return i;
+            }
+        }
+        return word.length();
+    }
+
+    private static float textWidth(String text, PDFont font, float fontSize) throws IOException {
+        return font.getStringWidth(text) / 1000 * fontSize;
+    }
+
+    private static float lineHeight(Style style) {
+        return style.fontSize * LINE_SPACING;
+    }
+
+    /**
+     * Символы, которых нет в кодировке шрифта, заменяются на "?", чтобы не ронять весь экспорт
+     */
+    static String toEncodable(String text, PDFont font) {
+        try {
+            font.encode(text);
+            return text;
+        } catch (IllegalArgumentException | IOException e) {
+            StringBuilder result = new StringBuilder(text.length());
+            text.codePoints().forEach(codePoint -> {
+                String symbol = new String(Character.toChars(codePoint));
+                try {
+                    font.encode(symbol);
+                    result.append(symbol);
+                } catch (IllegalArgumentException | IOException unsupported) {
+                    result.append('?');
+                }
+            });
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.documentgenerationservice.service;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.poi.xwpf.model.XWPFHeaderFooterPolicy;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFHeaderFooter;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Статичный слой страниц шаблона: строки колонтитулов DOCX без переменных (бланк, реквизиты).
+ * Строки извлекаются один раз на шаблон. В каждом документе слой рисуется один раз
+ * в form XObject, и на страницы попадает только ссылка на него.
+ */
+public final class PdfPageLayer {
+
+    public static final PdfPageLayer EMPTY = new PdfPageLayer(Collections.emptyList(), Collections.emptyList());
+
+    private static final float FONT_SIZE = 9;
+    private static final float LINE_HEIGHT = FONT_SIZE * 1.25f;
+    private static final float EDGE = 30;
+    private static final float GAP = 10;
+
+    private final List<String> headerLines;
+    private final List<String> footerLines;
+
+    private PdfPageLayer(List<String> headerLines, List<String> footerLines) {
+        this.headerLines = headerLines;
+        this.footerLines = footerLines;
+    }
+
+    /**
+     * Собирает слой из колонтитулов по умолчанию; строки с переменными пропускаются
+     */
+    public static PdfPageLayer fromDocx(InputStream docxContent) throws IOException {
+        try (XWPFDocument document = new XWPFDocument(docxContent)) {
+            XWPFHeaderFooterPolicy policy = document.getHeaderFooterPolicy();
+            XWPFHeaderFooter header = policy != null && policy.getDefaultHeader() != null
+                    ? policy.getDefaultHeader()
+                    : first(document.getHeaderList());
+            XWPFHeaderFooter footer = policy != null && policy.getDefaultFooter() != null
+                    ? policy.getDefaultFooter()
+                    : first(document.getFooterList());
+
+            List<String> headerLines = staticLines(header);
+            List<String> footerLines = staticLines(footer);
+            if (headerLines.isEmpty() && footerLines.isEmpty()) {
+                return EMPTY;
+            }
+            return new PdfPageLayer(headerLines, footerLines);
+        }
+    }
+
+    public boolean isEmpty() {
+        return headerLines.isEmpty() && footerLines.isEmpty();
+    }
+
+    /**
+     * Ключ содержимого слоя для ключа PDF-артефактов
+     */
+    public String getKey() {
+        return isEmpty() ? "" : ArtifactStore.key(String.join("\n", headerLines), String.join("\n", footerLines));
+    }
+
+    /**
+     * Рисует слой в form XObject документа
+     */
+    public Stamp createStamp(PDDocument document, PDFont font, PDRectangle pageSize, float margin) throws IOException {
+        PDFormXObject form = new PDFormXObject(document);
+        form.setBBox(new PDRectangle(pageSize.getWidth(), pageSize.getHeight()));
+        form.setResources(new PDResources());
+
+        float width = pageSize.getWidth() - 2 * margin;
+        List<String> header = wrapAll(headerLines, font, width);
+        List<String> footer = wrapAll(footerLines, font, width);
+
+        try (PDPageContentStream contentStream = new PDPageContentStream(document, form,
+                form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+            float y = pageSize.getHeight() - EDGE;
+            for (String line : header) {
+                y -= LINE_HEIGHT;
+                showText(contentStream, font, margin, y, line);
+            }
+
+            // Последняя строка подвала стоит на нижней границе EDGE
+            y = EDGE + footer.size() * LINE_HEIGHT;
+            for (String line : footer) {
+                y -= LINE_HEIGHT;
+                showText(contentStream, font, margin, y, line);
+            }
+        }
+
+        float top = header.isEmpty() ? 0 : EDGE + header.size() * LINE_HEIGHT + GAP;
+        float bottom = footer.isEmpty() ? 0 : EDGE + footer.size() * LINE_HEIGHT + GAP;
+        return new Stamp(form, top, bottom);
+    }
+
+    private static void showText(PDPageContentStream contentStream, PDFont font, float x, float y,
+                                 String line) throws IOException {
+        contentStream.beginText();
+        contentStream.setFont(font, FONT_SIZE);
+        contentStream.newLineAtOffset(x, y);
+        contentStream.showText(line);
+        contentStream.endText();
+    }
+
+    private static List<String> wrapAll(List<String> lines, PDFont font, float width) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (String line : lines) {
+            result.addAll(PdfLayoutEngine.wrap(PdfLayoutEngine.toEncodable(line, font), font, FONT_SIZE, width, width));
+        }
+        return result;
+    }
+
+    private static List<String> staticLines(XWPFHeaderFooter headerFooter) {
+        if (headerFooter == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (XWPFParagraph paragraph : headerFooter.getParagraphs()) {
+            String text = paragraph.getText();
+            if (text == null || text.trim().isEmpty() || text.contains("${")) {
+                continue;
+            }
+            lines.add(text.replace("\t", "    ").trim());
+        }
+        return lines;
+    }
+
+    private static <T> T first(List<T> list) {
+        return list == null || list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Слой, нарисованный в конкретном документе, и место, которое он занимает сверху и снизу
+     */
+    public static final class Stamp {
+        private final PDFormXObject form;
+        private final float topReserved;
+        private final float bottomReserved;
+
+        private Stamp(PDFormXObject form, float topReserved, float bottomReserved) {
+            this.form = form;
+            this.topReserved = topReserved;
+            this.bottomReserved = bottomReserved;
+        }
+
+        PDFormXObject getForm() { return form; }
+        float getTopReserved() { return topReserved; }
+        float getBottomReserved() { return bottomReserved; }
+    }
+}
@@ -0,0 +1,43 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.TemplateVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Кэш статичных слоев страниц PDF. Слой зависит только от DOCX-файла, поэтому ключ - его хэш,
+ * и версии шаблона с тем же файлом делят один слой.
+ * Шаблоны без колонтитулов тоже кэшируются (PdfPageLayer.EMPTY), чтобы не разбирать DOCX повторно.
+ */
+@Component
+public class PdfPageLayerCache {
+
+    private final BoundedCache<String, PdfPageLayer> cache;
+
+    @Autowired
+    private DocxBlobStore docxBlobStore;
+
+    public PdfPageLayerCache(@Value("${app.pdf-layer-cache.max-size:128}") int maxSize) {
+        this.cache = new BoundedCache<>(maxSize);
+    }
+
+    public PdfPageLayer get(TemplateVersion version) {
+        if (version == null || !version.hasDocxFile()) {
+            return PdfPageLayer.EMPTY;
+        }
+        return cache.computeIfAbsent(version.getDocxBlobHash(), this::load);
+    }
+
+    private PdfPageLayer load(String docxBlobHash) {
+        try (InputStream docxContent = docxBlobStore.openStream(docxBlobHash)) {
+            return PdfPageLayer.fromDocx(docxContent);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read page layer of DOCX blob " + docxBlobHash, e);
+        }
+    }
+}
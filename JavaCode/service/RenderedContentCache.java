@@ -0,0 +1,45 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Текст документа для экспорта. У документов, сохраненных в ленивом режиме, generatedContent
+ * нет: текст рендерится из версии шаблона и данных при экспорте, последние результаты держатся в LRU.
+ * Версия и данные документа не меняются, поэтому ключ - просто id документа.
+ */
+@Component
+public class RenderedContentCache {
+
+    @Autowired
+    private CompiledTemplateCache compiledTemplateCache;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    private final BoundedCache<Long, String> cache;
+
+    public RenderedContentCache(@Value("${app.documents.rendered-cache.max-size:256}") int maxSize) {
+        this.cache = new BoundedCache<>(maxSize);
+    }
+
+    public String get(Document document) {
+        if (document.getGeneratedContent() != null) {
+            return document.getGeneratedContent();
+        }
+        if (document.getId() == null) {
+            return render(document);
+        }
+        return cache.computeIfAbsent(document.getId(), key -> render(document));
+    }
+
+    public void evict(Long documentId) {
+        cache.remove(documentId);
+    }
+
+    private String render(Document document) {
+        return compiledTemplateCache.get(templateVersionService.of(document)).render(document.getData());
+    }
+}
@@ -0,0 +1,294 @@
+package com.documentgenerationservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Отдельный пул по числу ядер для CPU-тяжелого рендеринга (POI, PDFBox). Потоки запросов,
+ * в том числе виртуальные, только ждут результат, поэтому тысячи легких запросов не стоят
+ * за несколькими тяжелыми экспортами, а рендеринг не вытесняет обработку запросов.
+ *
+ * Места в пуле и очереди выдаются разрешениями. Поток запроса (execute, executeAll) получает
+ * RejectedExecutionException (503 в контроллерах), если мест нет или рендеринг не уложился
+ * в таймаут. Фоновые потоки (задачи экспорта, ZIP) вызывают executeBlocking: ждут места
+ * и результата без таймаута, поэтому под нагрузкой замедляются, а не падают.
+ * Начатый рендеринг документа по таймауту не прерывается: он дописывает свой артефакт,
+ * а повторный запрос возьмет его из ArtifactStore. Порции слияния работают с общим документом
+ * (executeToCompletion): таймаут ограничивает только ожидание места в пуле.
+ */
+@Component
+public class RenderingBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderingBulkhead.class);
+
+    private static final String ACTIVE = "rendering.bulkhead.active";
+    private static final String QUEUED = "rendering.bulkhead.queued";
+    private static final String POOL_SIZE = "rendering.bulkhead.pool.size";
+    private static final String QUEUE_CAPACITY = "rendering.bulkhead.queue.capacity";
+    private static final String WAIT = "rendering.bulkhead.wait";
+    private static final String REJECTED = "rendering.bulkhead.rejected";
+
+    // Вложенный вызов из потока пула выполняется на месте, иначе при заполненном пуле он ждал бы сам себя
+    private static final ThreadLocal<Boolean> INSIDE = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ThreadPoolExecutor executor;
+    // Места в пуле и очереди: очередь исполнителя не ограничена, ее размер держат разрешения
+    private final Semaphore slots;
+    private final int queueCapacity;
+    private final long timeoutMs;
+
+    private Timer waitTimer;
+    private Counter queueFullCounter;
+    private Counter timeoutCounter;
+
+    /**
+     * Тело рендеринга
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run() throws IOException;
+    }
+
+    public RenderingBulkhead(@Value("${app.rendering.workers:0}") int workers,
+                             @Value("${app.rendering.queue-capacity:64}") int queueCapacity,
+                             @Value("${app.rendering.timeout-ms:30000}") long timeoutMs) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        this.timeoutMs = timeoutMs;
+        this.slots = new Semaphore(poolSize + queueCapacity, true);
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("render-worker-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder(ACTIVE, executor, ThreadPoolExecutor::getActiveCount)
+                .description("Renderings currently running in the bulkhead")
+                .register(meterRegistry);
+        Gauge.builder(QUEUED, executor, pool -> pool.getQueue().size())
+                .description("Renderings waiting for a bulkhead worker")
+                .register(meterRegistry);
+        Gauge.builder(POOL_SIZE, executor, ThreadPoolExecutor::getMaximumPoolSize)
+                .description("Bulkhead worker count")
+                .register(meterRegistry);
+        Gauge.builder(QUEUE_CAPACITY, this, bulkhead -> bulkhead.queueCapacity)
+                .description("Bulkhead queue capacity")
+                .register(meterRegistry);
+        waitTimer = Timer.builder(WAIT)
+                .description("Time a rendering spent in the bulkhead queue")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        queueFullCounter = rejectedCounter("queue_full");
+        timeoutCounter = rejectedCounter("timeout");
+        logger.info("Rendering bulkhead: {} workers, queue {}, timeout {} ms",
+                executor.getMaximumPoolSize(), queueCapacity, timeoutMs);
+    }
+
+    /**
+     * Для потоков запросов: выполняет рендеринг в пуле и ждет результат не дольше таймаута
+     */
+    public <T> T execute(Task<T> task) throws IOException {
+        if (INSIDE.get()) {
+            return task.run();
+        }
+        acquireOrReject(1);
+        Future<T> future = submit(task, System.nanoTime());
+        return await(future, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), false);
+    }
+
+    /**
+     * Для потоков запросов: выполняет несколько рендерингов параллельно в пуле и возвращает
+     * результаты в порядке задач. Все задачи укладываются в один общий таймаут;
+     * при отказе или ошибке остальные снимаются.
+     */
+    public <T> List<T> executeAll(List<Task<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (INSIDE.get()) {
+            for (Task<T> task : tasks) {
+                results.add(task.run());
+            }
+            return results;
+        }
+
+        acquireOrReject(tasks.size());
+        long submittedAt = System.nanoTime();
+        long deadline = submittedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Task<T> task : tasks) {
+                futures.add(submit(task, submittedAt));
+            }
+            for (Future<T> future : futures) {
+                results.add(await(future, deadline, true));
+            }
+            return results;
+        } finally {
+            for (Future<T> future : futures) {
+                abandon(future, true);
+            }
+        }
+    }
+
+    /**
+     * Для фоновых потоков и для порций уже начатого слияния: ждет свободного места,
+     * затем результата, без таймаута
+     */
+    public <T> T executeBlocking(Task<T> task) throws IOException {
+        if (INSIDE.get()) {
+            return task.run();
+        }
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a rendering slot", e);
+        }
+        Future<T> future = submit(task, System.nanoTime());
+        return await(future, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Для потоков запросов, когда начатую задачу нельзя бросить (порция слияния работает с документом,
+     * который поток запроса закроет): место берется как в execute, а таймаут ограничивает только
+     * ожидание в очереди. Начатую задачу поток запроса ждет до конца.
+     */
+    public <T> T executeToCompletion(Task<T> task) throws IOException {
+        if (INSIDE.get()) {
+            return task.run();
+        }
+        acquireOrReject(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<T> future = submit(() -> {
+            started.countDown();
+            return task.run();
+        }, System.nanoTime());
+        try {
+            // Задача, взятая в работу между таймаутом и снятием, из очереди уже не снимается - ее ждем
+            if (!started.await(timeoutMs, TimeUnit.MILLISECONDS) && abandon(future, false)) {
+                timeoutCounter.increment();
+                throw new RejectedExecutionException("Rendering did not start within " + timeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            abandon(future, true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for rendering", e);
+        }
+        return await(future, Long.MAX_VALUE, true);
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    private void acquireOrReject(int count) {
+        if (!slots.tryAcquire(count)) {
+            queueFullCounter.increment();
+            logger.warn("Rendering queue is full ({} waiting), rejecting", executor.getQueue().size());
+            throw new RejectedExecutionException("Rendering queue is full");
+        }
+    }
+
+    /**
+     * Ставит задачу в пул; разрешение уже получено и освобождается по завершении задачи
+     */
+    private <T> Future<T> submit(Task<T> task, long submittedAt) {
+        return executor.submit(() -> {
+            waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            INSIDE.set(Boolean.TRUE);
+            try {
+                return task.run();
+            } finally {
+                INSIDE.remove();
+                slots.release();
+            }
+        });
+    }
+
+    private <T> T await(Future<T> future, long deadline, boolean interruptOnAbandon) throws IOException {
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                return future.get();
+            }
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, interruptOnAbandon);
+            timeoutCounter.increment();
+            throw new RejectedExecutionException("Rendering did not finish within " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            abandon(future, interruptOnAbandon);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Результат больше не нужен. Задача из очереди снимается вместе с разрешением; начатая
+     * прерывается, только если это безопасно (interrupt), иначе дорабатывает и освобождает место сама.
+     * Возвращает true, если задача снята из очереди.
+     */
+    private boolean abandon(Future<?> future, boolean interrupt) {
+        if (executor.remove((Runnable) future)) {
+            slots.release();
+            future.cancel(false);
+            return true;
+        }
+        if (interrupt) {
+            future.cancel(true);
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Counter rejectedCounter(String reason) {
+        return Counter.builder(REJECTED)
+                .description("Renderings rejected by the bulkhead")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,175 @@
+package com.documentgenerationservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+
+/**
+ * Положение переменных параграфа относительно его run: для каждой переменной известны run
+ * и смещения начала и конца, в том числе когда Word разбил ${name} на несколько run.
+ * Подстановка переписывает только затронутые run: значение попадает в run, где начинается
+ * переменная, и наследует его форматирование, остальной текст остается в своих run.
+ */
+public final class RunSpans {
+
+    /**
+     * Изменения одного run: вырезаемые интервалы [start, end) и значения, вставляемые на их место.
+     * field == null - продолжение переменной, начавшейся в предыдущем run (вырезается без вставки).
+     */
+    private static final class RunEdit {
+        private final int run;
+        private final int length;
+        private final int[] starts;
+        private final int[] ends;
+        private final String[] fields;
+
+        private RunEdit(int run, int length, List<int[]> intervals, List<String> fields) {
+            this.run = run;
+            this.length = length;
+            this.starts = new int[intervals.size()];
+            this.ends = new int[intervals.size()];
+            for (int i = 0; i < intervals.size(); i++) {
+                starts[i] = intervals.get(i)[0];
+                ends[i] = intervals.get(i)[1];
+            }
+            this.fields = fields.toArray(new String[0]);
+        }
+
+        private String apply(String original, Map<String, String> data) {
+            StringBuilder result = new StringBuilder(original.length() + 16);
+            int position = 0;
+            for (int i = 0; i < starts.length; i++) {
+                result.append(original, position, starts[i]);
+                if (fields[i] != null) {
+                    String value = data != null ? data.get(fields[i]) : null;
+                    if (value != null) {
+                        result.append(value);
+                    }
+                }
+                position = ends[i];
+            }
+            result.append(original, position, original.length());
+            return result.toString();
+        }
+    }
+
+    private final int runCount;
+    private final RunEdit[] edits;
+
+    private RunSpans(int runCount, RunEdit[] edits) {
+        this.runCount = runCount;
+        this.edits = edits;
+    }
+
+    /**
+     * Строит разметку по текстам run параграфа (null - run без текста).
+     * Возвращает null, если в параграфе нет переменных.
+     */
+    public static RunSpans of(List<String> runTexts) {
+        int[] runStarts = new int[runTexts.size() + 1];
+        StringBuilder fullText = new StringBuilder();
+        for (int i = 0; i < runTexts.size(); i++) {
+            runStarts[i] = fullText.length();
+            String text = runTexts.get(i);
+            if (text != null) {
+                fullText.append(text);
+            }
+        }
+        runStarts[runTexts.size()] = fullText.length();
+
+        if (fullText.indexOf("${") < 0) {
+            return null;
+        }
+
+        // Интервалы по run в порядке следования; каждая переменная дает интервал в каждом run, который задевает
+        List<List<int[]>> intervals = new ArrayList<>(runTexts.size());
+        List<List<String>> fields = new ArrayList<>(runTexts.size());
+        for (int i = 0; i < runTexts.size(); i++) {
+            intervals.add(null);
+            fields.add(null);
+        }
+
+        Matcher matcher = CompiledTemplate.PLACEHOLDER_PATTERN.matcher(fullText);
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            int startRun = runAt(runStarts, matcher.start());
+            int endRun = runAt(runStarts, matcher.end() - 1);
+            for (int run = startRun; run <= endRun; run++) {
+                int from = Math.max(matcher.start(), runStarts[run]) - runStarts[run];
+                int to = Math.min(matcher.end(), runStarts[run + 1]) - runStarts[run];
+                if (intervals.get(run) == null) {
+                    intervals.set(run, new ArrayList<>());
+                    fields.set(run, new ArrayList<>());
+                }
+                intervals.get(run).add(new int[]{from, to});
+                fields.get(run).add(run == startRun ? matcher.group(1) : null);
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        List<RunEdit> edits = new ArrayList<>();
+        for (int run = 0; run < runTexts.size(); run++) {
+            if (intervals.get(run) != null) {
+                edits.add(new RunEdit(run, runStarts[run + 1] - runStarts[run], intervals.get(run), fields.get(run)));
+            }
+        }
+        return new RunSpans(runTexts.size(), edits.toArray(new RunEdit[0]));
+    }
+
+    /**
+     * Новые тексты run: null для run, которые не меняются. runText возвращает текущий текст run по номеру.
+     * Возвращает null, если тексты затронутых run не совпадают с разметкой
+     * (параграф не тот, для которого она строилась).
+     */
+    public String[] apply(int actualRunCount, IntFunction<String> runText, Map<String, String> data) {
+        if (actualRunCount != runCount) {
+            return null;
+        }
+
+        // Читаются только затронутые run
+        String[] result = new String[runCount];
+        for (RunEdit edit : edits) {
+            String original = runText.apply(edit.run);
+            if (original == null || original.length() != edit.length) {
+                return null;
+            }
+            result[edit.run] = edit.apply(original, data);
+        }
+        return result;
+    }
+
+    /**
+     * Имена переменных параграфа в порядке появления
+     */
+    public List<String> getFieldNames() {
+        List<String> names = new ArrayList<>();
+        for (RunEdit edit : edits) {
+            for (String field : edit.fields) {
+                if (field != null) {
+                    names.add(field);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static int runAt(int[] runStarts, int offset) {
+        // Run, содержащий символ offset: последний, начинающийся не позже offset (пустые перед ним пропускаются)
+        int low = 0;
+        int high = runStarts.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (runStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
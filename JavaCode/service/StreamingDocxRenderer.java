@@ -0,0 +1,873 @@
+package com.documentgenerationservice.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.springframework.stereotype.Component;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Рендерит DOCX-шаблон, не загружая его в объектную модель POI.
+ * Неизмененные части архива (стили, картинки, шрифты) копируются как есть, без перепаковки,
+ * а document.xml, header*.xml и footer*.xml переписываются одним проходом StAX.
+ * Замена переменных повторяет FileProcessingService.replaceVariablesInParagraph: по RunSpans
+ * переписываются только w:t затронутых run. Архив читается из файла хранилища
+ * через FileChannel, без копии в кучу.
+ */
+@Component
+public class StreamingDocxRenderer {
+
+    static final String WORD_NAMESPACE = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final String DRAWING_NAMESPACE =
+            "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+
+    private static final String DOCUMENT_PART = "word/document.xml";
+
+    private static final Pattern TEXT_PART = Pattern.compile("word/(document|header\\d*|footer\\d*)\\.xml");
+
+    private static final String DOCUMENT_RELATIONSHIPS_PART = "word/_rels/document.xml.rels";
+
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+
+    private static final String RELATIONSHIPS_NAMESPACE =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final String CONTENT_TYPES_NAMESPACE =
+            "http://schemas.openxmlformats.org/package/2006/content-types";
+
+    private static final String HEADER_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.header+xml";
+
+    private static final String FOOTER_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.footer+xml";
+
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+    private final XMLEventFactory eventFactory = XMLEventFactory.newFactory();
+
+    public StreamingDocxRenderer() {
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public void render(Path docxFile, Map<String, String> data, OutputStream outputStream) throws IOException {
+        try (ZipFile zipFile = new ZipFile(FileChannel.open(docxFile, StandardOpenOption.READ));
+             ZipArchiveOutputStream zipOutput = new ZipArchiveOutputStream(new NonClosingOutputStream(outputStream))) {
+
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+
+                if (!TEXT_PART.matcher(entry.getName()).matches()) {
+                    // Копируем сжатые данные без распаковки
+                    try (InputStream rawInput = zipFile.getRawInputStream(entry)) {
+                        zipOutput.addRawArchiveEntry(entry, rawInput);
+                    }
+                    continue;
+                }
+
+                ZipArchiveEntry rewritten = new ZipArchiveEntry(entry.getName());
+                rewritten.setTime(entry.getTime());
+                zipOutput.putArchiveEntry(rewritten);
+                try (InputStream partInput = zipFile.getInputStream(entry)) {
+                    rewritePart(partInput, zipOutput, data);
+                }
+                zipOutput.closeArchiveEntry();
+            }
+
+            zipOutput.finish();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to rewrite DOCX part: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Открывает слияние: одна копия тела документа на каждую строку данных, копии разделены
+     * разрывом раздела с параметрами страницы шаблона. Слияние идет шагами (Merge), чтобы
+     * вызывающий читал строки и писал ответ в своем потоке, а в RenderingBulkhead отдавал
+     * только разбор и рендеринг.
+     */
+    public Merge openMerge(Path docxFile) throws IOException {
+        return new Merge(new ZipFile(FileChannel.open(docxFile, StandardOpenOption.READ)));
+    }
+
+    /**
+     * Одно слияние. prepare и render только считают, start, drain и finish только пишут в поток.
+     * Тело шаблона держится в памяти одним списком событий; render пишет копии порции в буфер,
+     * drain сливает его в архив, поэтому память не растет с числом строк.
+     *
+     * Колонтитул с переменными получает на каждую копию свою часть (header1_2.xml и т.д.)
+     * со своим Relationship, и раздел копии ссылается на нее. Такие части копятся во временном
+     * архиве и дописываются в finish вместе с document.xml.rels и [Content_Types].xml.
+     * Колонтитулы без переменных общие для всех копий. Id закладок и рисунков в каждой копии
+     * перенумеровываются, чтобы оставаться уникальными.
+     */
+    public final class Merge implements Closeable {
+
+        private final ZipFile zipFile;
+        private final List<XMLEvent> head = new ArrayList<>();
+        private final List<XMLEvent> body = new ArrayList<>();
+        private final List<XMLEvent> sectionProperties = new ArrayList<>();
+        private final List<XMLEvent> tail = new ArrayList<>();
+        // Колонтитулы с переменными по id их Relationship
+        private final Map<String, HeaderFooter> headersFooters = new LinkedHashMap<>();
+        // Отрендеренные, но еще не слитые в поток document.xml и части колонтитулов
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Map<String, byte[]> renderedParts = new LinkedHashMap<>();
+
+        private List<Integer> numberedBody = List.of();
+        private List<Integer> numberedSection = List.of();
+        private long maxBookmarkId = -1;
+        private long maxDrawingId = -1;
+        private String prefix;
+
+        private ZipArchiveOutputStream zipOutput;
+        private XMLEventWriter writer;
+        private Path partsFile;
+        private ZipArchiveOutputStream partsOutput;
+        private int written;
+
+        private Merge(ZipFile zipFile) {
+            this.zipFile = zipFile;
+        }
+
+        /**
+         * Разбирает document.xml и колонтитулы шаблона
+         */
+        public void prepare() throws IOException {
+            try {
+                List<XMLEvent> relationships = Objects.requireNonNullElse(readPart(DOCUMENT_RELATIONSHIPS_PART), List.of());
+                for (XMLEvent event : relationships) {
+                    if (!isHeaderFooterRelationship(event)) {
+                        continue;
+                    }
+                    StartElement relationship = event.asStartElement();
+                    String target = relationship.getAttributeByName(new QName("Target")).getValue();
+                    String partName = target.startsWith("/") ? target.substring(1) : "word/" + target;
+                    List<XMLEvent> events = readPart(partName);
+                    if (events == null) {
+                        continue;
+                    }
+                    List<Integer> numbered = collectIds(events);
+                    if (hasPlaceholders(events)) {
+                        String id = relationship.getAttributeByName(new QName("Id")).getValue();
+                        headersFooters.put(id, new HeaderFooter(relationship, partName, events, numbered));
+                    }
+                }
+
+                parseDocument();
+                numberedBody = collectIds(body);
+                numberedSection = collectIds(sectionProperties);
+                prefix = head.get(head.size() - 1).asStartElement().getName().getPrefix();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to merge DOCX part: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Копирует неизмененные части архива и открывает document.xml
+         */
+        public void start(OutputStream outputStream) throws IOException {
+            zipOutput = new ZipArchiveOutputStream(new NonClosingOutputStream(outputStream));
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (!isRewritten(entry.getName())) {
+                    try (InputStream rawInput = zipFile.getRawInputStream(entry)) {
+                        zipOutput.addRawArchiveEntry(entry, rawInput);
+                    }
+                }
+            }
+
+            ZipArchiveEntry document = new ZipArchiveEntry(DOCUMENT_PART);
+            document.setTime(zipFile.getEntry(DOCUMENT_PART).getTime());
+            zipOutput.putArchiveEntry(document);
+            if (!headersFooters.isEmpty()) {
+                partsFile = Files.createTempFile("merge-parts-", ".zip");
+                partsOutput = new ZipArchiveOutputStream(partsFile.toFile());
+            }
+
+            try {
+                // Один писатель на весь document.xml: StAX дописывает '>' открывающего тега лениво
+                writer = outputFactory.createXMLEventWriter(buffer, "UTF-8");
+                writeAll(head, writer);
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to merge DOCX part: " + e.getMessage(), e);
+            }
+            drain();
+        }
+
+        /**
+         * Рендерит копии для порции строк в буфер
+         */
+        public void render(List<Map<String, String>> rows) throws IOException {
+            try {
+                for (Map<String, String> data : rows) {
+                    if (written > 0) {
+                        writeSectionBreak(prefix, copyOf(sectionProperties, numberedSection, written - 1), writer);
+                    }
+                    writeBody(copyOf(body, numberedBody, written), writer, data);
+                    for (HeaderFooter part : headersFooters.values()) {
+                        renderedParts.put(copyName(part.partName, written),
+                                renderPart(copyOf(part.events, part.numbered, written), data));
+                    }
+                    written++;
+                }
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to merge DOCX part: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Сливает отрендеренное в архив ответа и во временный архив колонтитулов
+         */
+        public void drain() throws IOException {
+            buffer.writeTo(zipOutput);
+            buffer.reset();
+            for (Map.Entry<String, byte[]> part : renderedParts.entrySet()) {
+                partsOutput.putArchiveEntry(new ZipArchiveEntry(part.getKey()));
+                partsOutput.write(part.getValue());
+                partsOutput.closeArchiveEntry();
+            }
+            renderedParts.clear();
+        }
+
+        /**
+         * Закрывает document.xml, дописывает колонтитулы копий и их связи.
+         * Возвращает число записанных строк.
+         */
+        public int finish() throws IOException {
+            if (written == 0) {
+                render(List.of(Map.of()));
+            }
+            try {
+                writeAll(copyOf(sectionProperties, numberedSection, written - 1), writer);
+                writeAll(tail, writer);
+                writer.flush();
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to merge DOCX part: " + e.getMessage(), e);
+            }
+            drain();
+            zipOutput.closeArchiveEntry();
+
+            if (!headersFooters.isEmpty()) {
+                partsOutput.finish();
+                try (ZipFile parts = new ZipFile(FileChannel.open(partsFile, StandardOpenOption.READ))) {
+                    Enumeration<ZipArchiveEntry> entries = parts.getEntriesInPhysicalOrder();
+                    while (entries.hasMoreElements()) {
+                        ZipArchiveEntry entry = entries.nextElement();
+                        try (InputStream rawInput = parts.getRawInputStream(entry)) {
+                            zipOutput.addRawArchiveEntry(entry, rawInput);
+                        }
+                    }
+                }
+                copyHeaderFooterRelationships();
+                try {
+                    writeDocumentRelationships();
+                    writeContentTypes();
+                } catch (XMLStreamException e) {
+                    throw new IOException("Failed to merge DOCX part: " + e.getMessage(), e);
+                }
+            }
+
+            zipOutput.finish();
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (partsOutput != null) {
+                    partsOutput.close();
+                }
+            } finally {
+                try {
+                    if (partsFile != null) {
+                        Files.deleteIfExists(partsFile);
+                    }
+                } finally {
+                    zipFile.close();
+                }
+            }
+        }
+
+        /**
+         * Разбор document.xml: все до <w:body> включительно, дочерние элементы тела,
+         * завершающий w:sectPr тела и все после </w:body>
+         */
+        private void parseDocument() throws IOException, XMLStreamException {
+            try (InputStream partInput = zipFile.getInputStream(zipFile.getEntry(DOCUMENT_PART))) {
+                XMLEventReader reader = inputFactory.createXMLEventReader(partInput);
+                try {
+                    List<XMLEvent> target = head;
+                    int depth = 0;
+                    int bodyDepth = -1;
+                    while (reader.hasNext()) {
+                        XMLEvent event = reader.nextEvent();
+                        if (event.isStartElement()) {
+                            depth++;
+                            if (bodyDepth > 0 && depth == bodyDepth + 1 && isWordElement(event, "sectPr", true)) {
+                                target = sectionProperties;
+                            }
+                        } else if (event.isEndElement()) {
+                            if (depth == bodyDepth) {
+                                target = tail;
+                                bodyDepth = -1;
+                            }
+                            depth--;
+                        }
+                        target.add(event);
+
+                        if (bodyDepth < 0 && target == head && isWordElement(event, "body", true)) {
+                            bodyDepth = depth;
+                            target = body;
+                        } else if (target == sectionProperties && depth == bodyDepth && event.isEndElement()) {
+                            target = body;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+
+        /**
+         * Индексы событий, которые меняются в копиях: закладки, рисунки и ссылки на колонтитулы
+         * с переменными. Попутно обновляет наибольшие id закладок и рисунков.
+         */
+        private List<Integer> collectIds(List<XMLEvent> events) {
+            List<Integer> numbered = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                long bookmarkId = bookmarkId(events.get(i));
+                long drawingId = drawingId(events.get(i));
+                if (bookmarkId >= 0 || drawingId >= 0 || headerFooterReference(events.get(i)) != null) {
+                    numbered.add(i);
+                    maxBookmarkId = Math.max(maxBookmarkId, bookmarkId);
+                    maxDrawingId = Math.max(maxDrawingId, drawingId);
+                }
+            }
+            return numbered;
+        }
+
+        /**
+         * r:id ссылки на колонтитул с переменными или null
+         */
+        private String headerFooterReference(XMLEvent event) {
+            if (!isWordElement(event, "headerReference", true) && !isWordElement(event, "footerReference", true)) {
+                return null;
+            }
+            Attribute id = event.asStartElement().getAttributeByName(new QName(RELATIONSHIPS_NAMESPACE, "id"));
+            return id != null && headersFooters.containsKey(id.getValue()) ? id.getValue() : null;
+        }
+
+        /**
+         * Копия k сдвигает id закладок и рисунков на k шагов; шаг больше любого id шаблона,
+         * поэтому id копий не пересекаются. Ссылки на колонтитулы ведут на части копии.
+         */
+        private List<XMLEvent> copyOf(List<XMLEvent> events, List<Integer> numbered, int copy) {
+            if (copy == 0 || numbered.isEmpty()) {
+                return events;
+            }
+            List<XMLEvent> result = new ArrayList<>(events);
+            for (int index : numbered) {
+                StartElement element = events.get(index).asStartElement();
+                String reference = headerFooterReference(element);
+                if (reference != null) {
+                    result.set(index, withAttribute(element, new QName(RELATIONSHIPS_NAMESPACE, "id"),
+                            copyId(reference, copy)));
+                } else if (bookmarkId(element) >= 0) {
+                    result.set(index, withAttribute(element, new QName(WORD_NAMESPACE, "id"),
+                            String.valueOf(bookmarkId(element) + copy * (maxBookmarkId + 1))));
+                } else {
+                    result.set(index, withAttribute(element, new QName("id"),
+                            String.valueOf(drawingId(element) + copy * (maxDrawingId + 1))));
+                }
+            }
+            return result;
+        }
+
+        private boolean isRewritten(String name) {
+            if (DOCUMENT_PART.equals(name)) {
+                return true;
+            }
+            if (headersFooters.isEmpty()) {
+                return false;
+            }
+            if (DOCUMENT_RELATIONSHIPS_PART.equals(name) || CONTENT_TYPES_PART.equals(name)) {
+                return true;
+            }
+            for (HeaderFooter part : headersFooters.values()) {
+                if (part.partName.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Связи колонтитула (например, с его картинками) копии получают как есть, под своим именем
+         */
+        private void copyHeaderFooterRelationships() throws IOException {
+            for (HeaderFooter part : headersFooters.values()) {
+                ZipArchiveEntry entry = zipFile.getEntry(relationshipsPartName(part.partName));
+                if (entry == null) {
+                    continue;
+                }
+                for (int copy = 1; copy < written; copy++) {
+                    ZipArchiveEntry copied = new ZipArchiveEntry(relationshipsPartName(copyName(part.partName, copy)));
+                    copied.setMethod(entry.getMethod());
+                    copied.setCrc(entry.getCrc());
+                    copied.setSize(entry.getSize());
+                    copied.setCompressedSize(entry.getCompressedSize());
+                    copied.setTime(entry.getTime());
+                    try (InputStream rawInput = zipFile.getRawInputStream(entry)) {
+                        zipOutput.addRawArchiveEntry(copied, rawInput);
+                    }
+                }
+            }
+        }
+
+        private void writeDocumentRelationships() throws IOException, XMLStreamException {
+            zipOutput.putArchiveEntry(new ZipArchiveEntry(DOCUMENT_RELATIONSHIPS_PART));
+            XMLEventWriter partWriter = outputFactory.createXMLEventWriter(zipOutput, "UTF-8");
+            for (XMLEvent event : readPart(DOCUMENT_RELATIONSHIPS_PART)) {
+                if (event.isEndElement() && "Relationships".equals(event.asEndElement().getName().getLocalPart())) {
+                    for (int copy = 1; copy < written; copy++) {
+                        for (Map.Entry<String, HeaderFooter> part : headersFooters.entrySet()) {
+                            StartElement relationship = part.getValue().relationship;
+                            String target = relationship.getAttributeByName(new QName("Target")).getValue();
+                            relationship = withAttribute(relationship, new QName("Id"), copyId(part.getKey(), copy));
+                            partWriter.add(withAttribute(relationship, new QName("Target"), copyName(target, copy)));
+                            partWriter.add(eventFactory.createEndElement(relationship.getName(), null));
+                        }
+                    }
+                }
+                partWriter.add(event);
+            }
+            partWriter.flush();
+            partWriter.close();
+            zipOutput.closeArchiveEntry();
+        }
+
+        private void writeContentTypes() throws IOException, XMLStreamException {
+            zipOutput.putArchiveEntry(new ZipArchiveEntry(CONTENT_TYPES_PART));
+            XMLEventWriter partWriter = outputFactory.createXMLEventWriter(zipOutput, "UTF-8");
+            for (XMLEvent event : readPart(CONTENT_TYPES_PART)) {
+                if (event.isEndElement() && "Types".equals(event.asEndElement().getName().getLocalPart())) {
+                    String typesPrefix = event.asEndElement().getName().getPrefix();
+                    for (int copy = 1; copy < written; copy++) {
+                        for (HeaderFooter part : headersFooters.values()) {
+                            String type = part.relationship.getAttributeByName(new QName("Type")).getValue();
+                            partWriter.add(eventFactory.createStartElement(typesPrefix, CONTENT_TYPES_NAMESPACE, "Override"));
+                            partWriter.add(eventFactory.createAttribute("PartName", "/" + copyName(part.partName, copy)));
+                            partWriter.add(eventFactory.createAttribute("ContentType",
+                                    type.endsWith("/header") ? HEADER_CONTENT_TYPE : FOOTER_CONTENT_TYPE));
+                            partWriter.add(eventFactory.createEndElement(typesPrefix, CONTENT_TYPES_NAMESPACE, "Override"));
+                        }
+                    }
+                }
+                partWriter.add(event);
+            }
+            partWriter.flush();
+            partWriter.close();
+            zipOutput.closeArchiveEntry();
+        }
+
+        /**
+         * Все события части архива или null, если части нет
+         */
+        private List<XMLEvent> readPart(String name) throws IOException, XMLStreamException {
+            ZipArchiveEntry entry = zipFile.getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            List<XMLEvent> events = new ArrayList<>();
+            try (InputStream partInput = zipFile.getInputStream(entry)) {
+                XMLEventReader reader = inputFactory.createXMLEventReader(partInput);
+                try {
+                    while (reader.hasNext()) {
+                        events.add(reader.nextEvent());
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            return events;
+        }
+    }
+
+    /**
+     * Колонтитул с переменными: его Relationship в document.xml.rels и разобранная часть
+     */
+    private static final class HeaderFooter {
+        private final StartElement relationship;
+        private final String partName;
+        private final List<XMLEvent> events;
+        private final List<Integer> numbered;
+
+        private HeaderFooter(StartElement relationship, String partName, List<XMLEvent> events,
+                             List<Integer> numbered) {
+            this.relationship = relationship;
+            this.partName = partName;
+            this.events = events;
+            this.numbered = numbered;
+        }
+    }
+
+    private static boolean isHeaderFooterRelationship(XMLEvent event) {
+        if (!event.isStartElement() || !"Relationship".equals(event.asStartElement().getName().getLocalPart())) {
+            return false;
+        }
+        StartElement relationship = event.asStartElement();
+        Attribute type = relationship.getAttributeByName(new QName("Type"));
+        Attribute mode = relationship.getAttributeByName(new QName("TargetMode"));
+        return type != null && (type.getValue().endsWith("/header") || type.getValue().endsWith("/footer"))
+                && relationship.getAttributeByName(new QName("Target")) != null
+                && (mode == null || !"External".equals(mode.getValue()));
+    }
+
+    /**
+     * Имя части копии: header1.xml, header1_1.xml, header1_2.xml...; копия 0 сохраняет имя шаблона
+     */
+    private static String copyName(String name, int copy) {
+        if (copy == 0) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        return name.substring(0, dot) + "_" + copy + name.substring(dot);
+    }
+
+    private static String copyId(String relationshipId, int copy) {
+        return copy == 0 ? relationshipId : relationshipId + "_" + copy;
+    }
+
+    /**
+     * word/header1.xml -> word/_rels/header1.xml.rels
+     */
+    private static String relationshipsPartName(String partName) {
+        int slash = partName.lastIndexOf('/');
+        return partName.substring(0, slash + 1) + "_rels/" + partName.substring(slash + 1) + ".rels";
+    }
+
+    private boolean hasPlaceholders(List<XMLEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            if (isWordElement(events.get(i), "p", true)) {
+                int end = paragraphEnd(events, i);
+                if (RunSpans.of(runTexts(findRunTexts(events.subList(i, end + 1)))) != null) {
+                    return true;
+                }
+                i = end;
+            }
+        }
+        return false;
+    }
+
+    private byte[] renderPart(List<XMLEvent> events, Map<String, String> data) throws XMLStreamException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLEventWriter partWriter = outputFactory.createXMLEventWriter(output, "UTF-8");
+        try {
+            writeBody(events, partWriter, data);
+            partWriter.flush();
+        } finally {
+            partWriter.close();
+        }
+        return output.toByteArray();
+    }
+
+    private StartElement withAttribute(StartElement element, QName name, String value) {
+        List<Attribute> attributes = new ArrayList<>();
+        Iterator<Attribute> iterator = element.getAttributes();
+        while (iterator.hasNext()) {
+            Attribute attribute = iterator.next();
+            attributes.add(name.equals(attribute.getName())
+                    ? eventFactory.createAttribute(attribute.getName(), value)
+                    : attribute);
+        }
+        return eventFactory.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    /**
+     * w:id закладки или -1
+     */
+    private static long bookmarkId(XMLEvent event) {
+        if (isWordElement(event, "bookmarkStart", true) || isWordElement(event, "bookmarkEnd", true)) {
+            return numericAttribute(event.asStartElement(), new QName(WORD_NAMESPACE, "id"));
+        }
+        return -1;
+    }
+
+    /**
+     * id рисунка (wp:docPr) или -1
+     */
+    private static long drawingId(XMLEvent event) {
+        if (event.isStartElement() && DRAWING_NAMESPACE.equals(event.asStartElement().getName().getNamespaceURI())
+                && "docPr".equals(event.asStartElement().getName().getLocalPart())) {
+            return numericAttribute(event.asStartElement(), new QName("id"));
+        }
+        return -1;
+    }
+
+    private static long numericAttribute(StartElement element, QName name) {
+        Attribute attribute = element.getAttributeByName(name);
+        if (attribute == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(attribute.getValue().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void writeBody(List<XMLEvent> events, XMLEventWriter writer, Map<String, String> data)
+            throws XMLStreamException {
+        for (int i = 0; i < events.size(); i++) {
+            XMLEvent event = events.get(i);
+            if (!isWordElement(event, "p", true)) {
+                writer.add(event);
+                continue;
+            }
+
+            int end = paragraphEnd(events, i);
+            writeParagraph(events.subList(i, end + 1), writer, data);
+            i = end;
+        }
+    }
+
+    /**
+     * Индекс закрывающего w:p для параграфа, начатого в start, с учетом вложенных параграфов
+     */
+    private static int paragraphEnd(List<XMLEvent> events, int start) {
+        int end = start + 1;
+        int depth = 1;
+        while (end < events.size()) {
+            if (isWordElement(events.get(end), "p", true)) {
+                depth++;
+            } else if (isWordElement(events.get(end), "p", false) && --depth == 0) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Параграф с w:sectPr шаблона завершает раздел предыдущей строки; тип раздела по умолчанию -
+     * с новой страницы. Без w:sectPr в шаблоне - обычный разрыв страницы.
+     */
+    private void writeSectionBreak(String prefix, List<XMLEvent> sectionProperties, XMLEventWriter writer)
+            throws XMLStreamException {
+        writer.add(eventFactory.createStartElement(prefix, WORD_NAMESPACE, "p"));
+        if (sectionProperties.isEmpty()) {
+            writer.add(eventFactory.createStartElement(prefix, WORD_NAMESPACE, "r"));
+            writer.add(eventFactory.createStartElement(prefix, WORD_NAMESPACE, "br"));
+            writer.add(eventFactory.createAttribute(prefix, WORD_NAMESPACE, "type", "page"));
+            writer.add(eventFactory.createEndElement(prefix, WORD_NAMESPACE, "br"));
+            writer.add(eventFactory.createEndElement(prefix, WORD_NAMESPACE, "r"));
+        } else {
+            writer.add(eventFactory.createStartElement(prefix, WORD_NAMESPACE, "pPr"));
+            writeAll(sectionProperties, writer);
+            writer.add(eventFactory.createEndElement(prefix, WORD_NAMESPACE, "pPr"));
+        }
+        writer.add(eventFactory.createEndElement(prefix, WORD_NAMESPACE, "p"));
+    }
+
+    private void rewritePart(InputStream input, OutputStream output, Map<String, String> data) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(input);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(output, "UTF-8");
+
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (isWordElement(event, "p", true)) {
+                    writeParagraph(readParagraph(event, reader), writer, data);
+                } else {
+                    writer.add(event);
+                }
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * Буферизует параграф целиком, включая вложенные параграфы (например, в надписях)
+     */
+    private List<XMLEvent> readParagraph(XMLEvent start, XMLEventReader reader) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<>();
+        events.add(start);
+
+        int depth = 1;
+        while (reader.hasNext() && depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (isWordElement(event, "p", true)) {
+                depth++;
+            } else if (isWordElement(event, "p", false)) {
+                depth--;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    private void writeParagraph(List<XMLEvent> events, XMLEventWriter writer, Map<String, String> data)
+            throws XMLStreamException {
+
+        List<TextSlot> slots = findRunTexts(events);
+        List<String> runTexts = runTexts(slots);
+
+        RunSpans spans = RunSpans.of(runTexts);
+        String[] texts = spans != null ? spans.apply(runTexts.size(), runTexts::get, data) : null;
+        if (texts == null) {
+            writeAll(events, writer);
+            return;
+        }
+
+        // Переписываются только w:t затронутых run, остальные события идут как есть
+        int slotIndex = 0;
+        for (int i = 0; i < events.size(); i++) {
+            if (slotIndex < slots.size() && slots.get(slotIndex).start == i) {
+                TextSlot slot = slots.get(slotIndex);
+                if (texts[slotIndex] != null) {
+                    writer.add(preserveSpace(events.get(slot.start).asStartElement()));
+                    writer.add(eventFactory.createCharacters(texts[slotIndex]));
+                    writer.add(events.get(slot.end));
+                    i = slot.end;
+                } else {
+                    writer.add(events.get(i));
+                }
+                slotIndex++;
+            } else {
+                writer.add(events.get(i));
+            }
+        }
+    }
+
+    private static List<String> runTexts(List<TextSlot> slots) {
+        List<String> runTexts = new ArrayList<>(slots.size());
+        for (TextSlot slot : slots) {
+            runTexts.add(slot.text);
+        }
+        return runTexts;
+    }
+
+    /**
+     * Находит первый w:t каждого run верхнего уровня - то же, что XWPFRun.getText(0)
+     */
+    private List<TextSlot> findRunTexts(List<XMLEvent> events) {
+        List<TextSlot> slots = new ArrayList<>();
+        int nestedParagraphs = 0;
+        boolean inRun = false;
+        boolean runHasText = false;
+
+        for (int i = 1; i < events.size() - 1; i++) {
+            XMLEvent event = events.get(i);
+
+            if (isWordElement(event, "p", true)) {
+                nestedParagraphs++;
+            } else if (isWordElement(event, "p", false)) {
+                nestedParagraphs--;
+            } else if (nestedParagraphs > 0) {
+                continue;
+            } else if (isWordElement(event, "r", true)) {
+                inRun = true;
+                runHasText = false;
+            } else if (isWordElement(event, "r", false)) {
+                inRun = false;
+            } else if (inRun && !runHasText && isWordElement(event, "t", true)) {
+                StringBuilder text = new StringBuilder();
+                int end = i + 1;
+                while (end < events.size() && !isWordElement(events.get(end), "t", false)) {
+                    if (events.get(end).isCharacters()) {
+                        text.append(events.get(end).asCharacters().getData());
+                    }
+                    end++;
+                }
+                slots.add(new TextSlot(i, end, text.toString()));
+                runHasText = true;
+                i = end;
+            }
+        }
+        return slots;
+    }
+
+    private StartElement preserveSpace(StartElement element) {
+        List<Attribute> attributes = new ArrayList<>();
+        Iterator<Attribute> iterator = element.getAttributes();
+        while (iterator.hasNext()) {
+            Attribute attribute = iterator.next();
+            if (!XMLConstants.XML_NS_URI.equals(attribute.getName().getNamespaceURI())) {
+                attributes.add(attribute);
+            }
+        }
+        attributes.add(eventFactory.createAttribute("xml", XMLConstants.XML_NS_URI, "space", "preserve"));
+
+        return eventFactory.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    private void writeAll(List<XMLEvent> events, XMLEventWriter writer) throws XMLStreamException {
+        for (XMLEvent event : events) {
+            writer.add(event);
+        }
+    }
+
+    static boolean isWordElement(XMLEvent event, String localName, boolean start) {
+        if (start && event.isStartElement()) {
+            return WORD_NAMESPACE.equals(event.asStartElement().getName().getNamespaceURI())
+                    && localName.equals(event.asStartElement().getName().getLocalPart());
+        }
+        if (!start && event.isEndElement()) {
+            return WORD_NAMESPACE.equals(event.asEndElement().getName().getNamespaceURI())
+                    && localName.equals(event.asEndElement().getName().getLocalPart());
+        }
+        return false;
+    }
+
+    private static final class TextSlot {
+        private final int start;
+        private final int end;
+        private final String text;
+
+        private TextSlot(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+}
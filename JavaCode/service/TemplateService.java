@@ -1,18 +1,26 @@
 package com.documentgenerationservice.service;
 
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
 import com.documentgenerationservice.dto.TemplateDTO;
+import com.documentgenerationservice.dto.TemplateSummaryDTO;
 import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
 import com.documentgenerationservice.model.User;
 import com.documentgenerationservice.repository.TemplateRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.HashMap;
 
@@ -25,45 +33,111 @@ public class TemplateService {
     @Autowired
     private  FileProcessingService fileProcessingService;
 
+    @Autowired
+    private DocxTemplateIndexCache docxTemplateIndexCache;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private RenderingBulkhead renderingBulkhead;
+
+    @Autowired
+    private DocxBlobService docxBlobService;
+
+    @Autowired
+    private DocxBlobStore docxBlobStore;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
     public List<Template> getUserTemplates(User user) {
         return templateRepository.findByUser(user);
     }
 
-    public List<TemplateDTO> getUserTemplatesDTO(User user) {
-        List<Template> templates = templateRepository.findByUser(user);
-        return templates.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    /**
+     * Страница шаблонов без содержимого и DOCX: одна проекция и один запрос за полями страницы
+     */
+    public PageResponse<TemplateSummaryDTO> getUserTemplatesPage(User user, ListQuery query) {
+        try {
+            return templateRepository.findSummaryPageByUserId(user.getId(), query);
+        } catch (InvalidDataAccessApiUsageException e) {
+            // Прокси репозитория оборачивает ошибки параметров (сортировка, курсор) - возвращаем исходную
+            throw new IllegalArgumentException(e.getMostSpecificCause().getMessage(), e);
+        }
+    }
+
+    public TemplateDTO getTemplateDTO(Template template) {
+        return convertToDTO(template);
+    }
+
+    /**
+     * Файл DOCX шаблона в хранилище
+     */
+    public Optional<Path> getTemplateFile(Template template) {
+        if (!template.hasDocxFile()) {
+            return Optional.empty();
+        }
+        Path path = docxBlobStore.path(template.getDocxBlobHash());
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
     }
 
     public Optional<Template> getTemplateById(Long id) {
         return templateRepository.findById(id);
     }
 
+    @Transactional
     public Template createTemplate(String name, String content, User user, Map<String, String> fields) {
         try {
             Template template = new Template(name, content, user);
             template.setFields(fields);
-            return templateRepository.save(template);
+            Template saved = templateRepository.save(template);
+            templateVersionService.createVersion(saved);
+            return saved;
         } catch (Exception e) {
             throw new RuntimeException("Error creating template: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Изменение содержимого или полей создает новую версию шаблона (copy-on-write):
+     * документы остаются на своей версии, прежняя версия удаляется, если документов по ней нет.
+     * Переименование версию не меняет. Изменение и новая версия сохраняются одной транзакцией
+     * под блокировкой строки шаблона: параллельное изменение ждет ее и видит уже новое содержимое.
+     */
+    @Transactional
     public Template updateTemplate(Long id, String name, String content, Map<String, String> fields) {
-        Optional<Template> templateOpt = templateRepository.findById(id);
+        Optional<Template> templateOpt = templateRepository.findForUpdateById(id);
         if (templateOpt.isPresent()) {
             Template template = templateOpt.get();
+            boolean contentChanged = content != null && !content.equals(template.getContent());
+            boolean fieldsChanged = fields != null && !fields.equals(template.getFields());
+            Long previousVersionId = template.getCurrentVersionId();
             if (name != null) template.setName(name);
-            if (content != null) template.setContent(content);
-            if (fields != null) template.setFields(fields);
-            return templateRepository.save(template);
+            if (contentChanged) template.setContent(content);
+            if (fieldsChanged) template.setFields(fields);
+            Template saved = templateRepository.save(template);
+            if (contentChanged || fieldsChanged || previousVersionId == null) {
+                templateVersionService.createVersion(saved);
+                templateVersionService.deleteIfUnreferenced(previousVersionId);
+            }
+            return saved;
         }
         throw new RuntimeException("Template not found");
     }
 
+    /**
+     * Ссылка на DOCX отпускается после удаления шаблона, файл удаляется, если ссылок не осталось
+     */
     public void deleteTemplate(Long id) {
-        templateRepository.deleteById(id);
+        Optional<Template> template = templateRepository.findById(id);
+        templateVersionService.deleteTemplate(id);
+
+        String docxBlobHash = template.map(Template::getDocxBlobHash).orElse(null);
+        if (docxBlobHash != null) {
+            docxBlobService.release(docxBlobHash);
+            docxBlobService.deleteIfUnreferenced(docxBlobHash);
+        }
     }
 
     public Map<String, String> extractFieldsFromContent(String content) {
@@ -71,8 +145,7 @@ public class TemplateService {
             return Map.of();
         }
 
-        Pattern pattern = Pattern.compile("\\$\\{([^}]+)\\}");
-        Matcher matcher = pattern.matcher(content);
+        Matcher matcher = CompiledTemplate.PLACEHOLDER_PATTERN.matcher(content);
 
         Map<String, String> fields = new HashMap<>();
         while (matcher.find()) {
@@ -93,27 +166,33 @@ public class TemplateService {
                 template.getCreatedAt(),
                 template.getUpdatedAt(),
                 template.getOriginalFileName(),
-                template.getDocxFileContent()
+                template.hasDocxFile()
         );
     }
 
-    public Template createTemplateFromDocx(String name, MultipartFile file, User user, Map<String, String> fields) {
+    /**
+     * Создает шаблон из DOCX за один разбор файла (в RenderingBulkhead). Разбор идет до транзакции,
+     * затем ссылка на файл, шаблон с полями и первая версия сохраняются одной транзакцией
+     * (DocxBlobService.createTemplate), а построенный индекс переменных сразу попадает в кэш,
+     * и первому экспорту не нужно искать переменные заново.
+     * Сам файл попадает в DocxBlobStore, в шаблоне остается только его хэш.
+     */
+    public Template createTemplateFromDocx(String name, MultipartFile file, User user) throws IOException {
+        DocxIngestion ingestion = renderingBulkhead.execute(() -> fileProcessingService.ingestDocx(file));
         try {
-            Template template = new Template(name, "", user);
-            template.setFields(fields);
+            Template template = new Template(name, ingestion.getContent(), user);
+            template.setFields(ingestion.getFields());
             template.setFileName(file.getOriginalFilename());
             template.setOriginalFileName(file.getOriginalFilename());
-
-            // Сохраняем оригинальный DOCX файл
-            template.setDocxFileContent(file.getBytes());
-
-            // Также извлекаем текст для предпросмотра
-            String content = fileProcessingService.extractTextFromDocx(file);
-            template.setContent(content);
-
-            return templateRepository.save(template);
-        } catch (Exception e) {
-            throw new RuntimeException("Error creating template from DOCX: " + e.getMessage(), e);
+            template.setDocxBlobHash(ingestion.getDocxHash());
+
+            TemplateVersion version = metrics.time(GenerationMetrics.PERSIST, GenerationMetrics.UPLOAD_DOCX,
+                    GenerationMetrics.sizeBucket(file.getSize()),
+                    () -> docxBlobService.createTemplate(template, ingestion.getDocxFile()));
+            docxTemplateIndexCache.put(version, ingestion.getIndex());
+            return template;
+        } finally {
+            Files.deleteIfExists(ingestion.getDocxFile());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.documentgenerationservice.repository.DocumentRepository;
+import com.documentgenerationservice.repository.TemplateRepository;
+import com.documentgenerationservice.repository.TemplateVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Фоновая подготовка версий шаблонов после старта приложения: шаблоны, созданные до версий,
+ * получают первую версию, их документы - ссылку на нее. Затем удаляются версии, на которые
+ * не ссылаются ни шаблон, ни документы (остаются после сбоев между шагами обновления).
+ */
+@Component
+public class TemplateVersionMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateVersionMigration.class);
+
+    @Autowired
+    private TemplateRepository templateRepository;
+
+    @Autowired
+    private TemplateVersionRepository templateVersionRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private TemplateVersionService templateVersionService;
+
+    @Value("${app.template-versions.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    @Value("${app.template-versions.migration-batch-size:200}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "template-version-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        int templates = 0;
+        int documents = 0;
+        int failed = 0;
+        long lastId = 0;
+
+        while (true) {
+            List<Long> ids = templateRepository.findIdsWithoutVersions(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            for (Long id : ids) {
+                try {
+                    Template template = templateRepository.findById(id).orElse(null);
+                    if (template == null) {
+                        continue;
+                    }
+                    if (template.getCurrentVersionId() == null) {
+                        templates++;
+                    }
+                    TemplateVersion version = templateVersionService.current(template);
+                    documents += documentRepository.assignTemplateVersion(id, version);
+                } catch (Exception e) {
+                    // Шаблон останется без версии до следующего запуска, экспорт создаст ее сам
+                    failed++;
+                    logger.error("Could not create version of template {}: {}", id, e.getMessage());
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        int deleted = deleteUnreferencedVersions();
+
+        if (templates > 0 || documents > 0 || failed > 0 || deleted > 0) {
+            logger.info("Template version migration finished: {} templates versioned, {} documents linked,"
+                    + " {} failed, {} unreferenced versions deleted", templates, documents, failed, deleted);
+        }
+    }
+
+    private int deleteUnreferencedVersions() {
+        int deleted = 0;
+        long lastId = 0;
+        while (true) {
+            List<Long> ids = templateVersionRepository.findUnreferencedIds(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                return deleted;
+            }
+            for (Long id : ids) {
+                if (templateVersionService.deleteIfUnreferenced(id)) {
+                    deleted++;
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.documentgenerationservice.repository.TemplateRepository;
+import com.documentgenerationservice.repository.TemplateVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Версии шаблонов. Изменение шаблона (copy-on-write) создает новую версию, старая остается
+ * для документов, сгенерированных по ней, и удаляется, когда таких документов не остается.
+ * Версии неизменяемы, поэтому кэшируются по id без инвалидации.
+ */
+@Service
+public class TemplateVersionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateVersionService.class);
+
+    @Autowired
+    private TemplateVersionRepository templateVersionRepository;
+
+    @Autowired
+    private TemplateRepository templateRepository;
+
+    // Собственный прокси: вызов из current() должен пройти через @Transactional
+    @Lazy
+    @Autowired
+    private TemplateVersionService self;
+
+    private final BoundedCache<Long, TemplateVersion> versions;
+
+    public TemplateVersionService(@Value("${app.template-version-cache.max-size:512}") int maxSize) {
+        this.versions = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Текущая версия шаблона; шаблон, созданный до появления версий, получает первую версию
+     */
+    public TemplateVersion current(Template template) {
+        if (template.getCurrentVersionId() == null) {
+            return self.createFirstVersion(template);
+        }
+        return get(template.getCurrentVersionId());
+    }
+
+    /**
+     * Первая версия шаблона, созданного до появления версий. Под блокировкой строки шаблона:
+     * если версию уже создал параллельный запрос, возвращается она.
+     */
+    @Transactional
+    public TemplateVersion createFirstVersion(Template template) {
+        Template locked = templateRepository.findForUpdateById(template.getId())
+                .orElseThrow(() -> new IllegalStateException("Template " + template.getId() + " not found"));
+        if (locked.getCurrentVersionId() != null) {
+            template.setCurrentVersionId(locked.getCurrentVersionId());
+            return get(locked.getCurrentVersionId());
+        }
+        return createVersion(template);
+    }
+
+    /**
+     * Версия, по которой сгенерирован документ (для старых документов - текущая версия шаблона)
+     */
+    public TemplateVersion of(Document document) {
+        if (document.getTemplateVersion() == null) {
+            return current(document.getTemplate());
+        }
+        // id берется из прокси без загрузки, сама версия - из кэша
+        return get(document.getTemplateVersion().getId());
+    }
+
+    public TemplateVersion get(Long id) {
+        return versions.computeIfAbsent(id, key -> templateVersionRepository.findById(key)
+                .orElseThrow(() -> new IllegalStateException("Template version " + key + " not found")));
+    }
+
+    /**
+     * Снимок текущего состояния шаблона становится его новой текущей версией.
+     * Версия сохраняется до шаблона: при сбое между шагами остается только версия без ссылок.
+     * Строка шаблона блокируется до конца транзакции, поэтому параллельные изменения
+     * не получают один и тот же номер версии.
+     */
+    @Transactional
+    public TemplateVersion createVersion(Template template) {
+        // Снимок берется с сохраненного шаблона: у переданного экземпляра поля могут быть не загружены
+        Template saved = templateRepository.findForUpdateById(template.getId())
+                .orElseThrow(() -> new IllegalStateException("Template " + template.getId() + " not found"));
+        int number = templateVersionRepository.findLastNumber(saved.getId()) + 1;
+        TemplateVersion version = templateVersionRepository.save(new TemplateVersion(saved, number));
+        saved.setCurrentVersionId(version.getId());
+        templateRepository.save(saved);
+        template.setCurrentVersionId(version.getId());
+        versions.put(version.getId(), version);
+        return version;
+    }
+
+    /**
+     * Единственное изменение версий: хэш DOCX для версий, снятых до переноса файла шаблона
+     * в DocxBlobStore. Такие версии убираются из кэша и перечитываются.
+     */
+    @Transactional
+    public void setMissingDocxBlobHash(Long templateId, String hash) {
+        List<Long> versionIds = templateVersionRepository.findIdsByTemplateId(templateId);
+        if (templateVersionRepository.setMissingDocxBlobHash(templateId, hash) > 0) {
+            versionIds.forEach(versions::remove);
+        }
+    }
+
+    /**
+     * Удаляет шаблон вместе со всеми его версиями. Пока есть документы шаблона,
+     * удаление откатывается целиком.
+     */
+    @Transactional
+    public void deleteTemplate(Long templateId) {
+        List<Long> versionIds = templateVersionRepository.findIdsByTemplateId(templateId);
+        templateVersionRepository.deleteByTemplateId(templateId);
+        templateRepository.deleteById(templateId);
+        templateRepository.flush();
+        versionIds.forEach(versions::remove);
+    }
+
+    /**
+     * Удаляет версию, если она не текущая и документов по ней нет. Возвращает true, если удалена.
+     */
+    @Transactional
+    public boolean deleteIfUnreferenced(Long versionId) {
+        if (versionId == null) {
+            return false;
+        }
+        boolean deleted = templateVersionRepository.deleteIfUnreferenced(versionId) > 0;
+        if (deleted) {
+            versions.remove(versionId);
+            logger.debug("Deleted unreferenced template version {}", versionId);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,139 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш пользователей по имени и по id для проверки сессии (current-user, refresh-session).
+ * Запись живет не дольше TTL, поэтому изменения в обход UserService видны с этой задержкой;
+ * изменения через UserService сбрасывают запись сразу. Отсутствующие пользователи не кэшируются.
+ */
+@Component
+public class UserCache {
+
+    private static final String REQUESTS = "user.cache.requests";
+    private static final String SIZE = "user.cache.size";
+
+    private static final class Entry {
+        private final User user;
+        private final long expiresAt;
+
+        private Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final BoundedCache<String, Entry> byUsername;
+    private final BoundedCache<Long, Entry> byId;
+    private final long ttlNanos;
+
+    // Растет при каждой инвалидации: загрузка, начавшаяся до нее, не кладет в кэш устаревшие данные
+    private final AtomicLong generation = new AtomicLong();
+
+    private Counter hits;
+    private Counter misses;
+
+    public UserCache(@Value("${app.user-cache.max-size:1024}") int maxSize,
+                     @Value("${app.user-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.byUsername = new BoundedCache<>(maxSize);
+        this.byId = new BoundedCache<>(maxSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        hits = requestCounter("hit");
+        misses = requestCounter("miss");
+        Gauge.builder(SIZE, byUsername, BoundedCache::size)
+                .description("Users cached by username")
+                .register(meterRegistry);
+    }
+
+    public Optional<User> getByUsername(String username, Supplier<Optional<User>> loader) {
+        if (username == null) {
+            return loader.get();
+        }
+        return lookup(byUsername.get(username), loader);
+    }
+
+    public Optional<User> getById(Long id, Supplier<Optional<User>> loader) {
+        if (id == null) {
+            return loader.get();
+        }
+        return lookup(byId.get(id), loader);
+    }
+
+    /**
+     * Кладет только что прочитанного или сохраненного пользователя
+     */
+    public void put(User user) {
+        store(user, generation.get());
+    }
+
+    /**
+     * Сбрасывает записи пользователя под текущими и прежними ключами
+     */
+    public void evict(User user) {
+        generation.incrementAndGet();
+        if (user.getId() != null) {
+            Entry previous = byId.get(user.getId());
+            if (previous != null) {
+                // Имя могло поменяться: убираем и запись под старым именем
+                byUsername.remove(previous.user.getUsername());
+            }
+            byId.remove(user.getId());
+        }
+        if (user.getUsername() != null) {
+            byUsername.remove(user.getUsername());
+        }
+    }
+
+    private Optional<User> lookup(Entry entry, Supplier<Optional<User>> loader) {
+        if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+            hits.increment();
+            return Optional.of(entry.user);
+        }
+
+        misses.increment();
+        long loadGeneration = generation.get();
+        Optional<User> loaded = loader.get();
+        loaded.ifPresent(user -> store(user, loadGeneration));
+        return loaded;
+    }
+
+    private void store(User user, long loadGeneration) {
+        if (user.getId() == null || user.getUsername() == null) {
+            return;
+        }
+        Entry entry = new Entry(user, System.nanoTime() + ttlNanos);
+        synchronized (this) {
+            if (generation.get() != loadGeneration) {
+                return;
+            }
+            byUsername.put(user.getUsername(), entry);
+            byId.put(user.getId(), entry);
+        }
+    }
+
+    private Counter requestCounter(String result) {
+        return Counter.builder(REQUESTS)
+                .description("User cache lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
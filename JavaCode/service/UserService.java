@@ -17,8 +17,27 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserCache userCache;
+
+    /**
+     * Пользователь из кэша (не старше TTL), при промахе - из БД
+     */
     public Optional<User> findByUsername(String username) {
-        return userRepository.findByUsername(username);
+        return userCache.getByUsername(username, () -> userRepository.findByUsername(username));
+    }
+
+    public Optional<User> findById(Long id) {
+        return userCache.getById(id, () -> userRepository.findById(id));
+    }
+
+    /**
+     * Всегда читает из БД (вход по паролю) и обновляет кэш
+     */
+    public Optional<User> loadByUsername(String username) {
+        Optional<User> user = userRepository.findByUsername(username);
+        user.ifPresent(userCache::put);
+        return user;
     }
 
     public User createUser(String username, String email, String password) {
@@ -30,7 +49,20 @@ public class UserService {
         }
 
         User user = new User(username, email, passwordEncoder.encode(password));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userCache.evict(saved);
+        return saved;
+    }
+
+    /**
+     * Сохраняет измененного пользователя; все изменения пользователей должны идти через этот метод,
+     * иначе кэш отдает старые данные до истечения TTL
+     */
+    public User updateUser(User user) {
+        userCache.evict(user);
+        User saved = userRepository.save(user);
+        userCache.evict(saved);
+        return saved;
     }
 
     public boolean validatePassword(String rawPassword, String encodedPassword) {
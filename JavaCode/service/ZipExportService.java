@@ -0,0 +1,286 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.dto.DocumentDTO;
+import com.documentgenerationservice.dto.ListQuery;
+import com.documentgenerationservice.dto.PageResponse;
+import com.documentgenerationservice.dto.ZipExportRequest;
+import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.User;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Экспорт многих документов одним ZIP-архивом. Документы загружаются одной короткой транзакцией
+ * до рендеринга и рендерятся параллельно на ограниченном пуле без открытой транзакции, каждый -
+ * через DocumentExportService, то есть через RenderingBulkhead и хранилище артефактов.
+ * При занятом RenderingBulkhead поток ждет места, а не пропускает документ.
+ * В архив документы пишутся строго в порядке запроса. Вперед готовится не больше max-in-flight
+ * документов: следующий ставится в работу, только когда первый из окна записан в ответ.
+ *
+ * Первый документ каждой версии шаблона рендерится раньше остальных документов этой версии,
+ * поэтому разбор шаблона (CompiledTemplate, индекс переменных DOCX, слой страницы PDF)
+ * выполняется один раз, а не в каждом параллельном потоке.
+ */
+@Service
+public class ZipExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZipExportService.class);
+
+    public static final String ERRORS_ENTRY = "errors.txt";
+
+    /**
+     * Документ архива и ключ его версии шаблона
+     */
+    public static final class Item {
+        private final Document document;
+        private final String templateKey;
+
+        Item(Document document, String templateKey) {
+            this.document = document;
+            this.templateKey = templateKey;
+        }
+
+        public Long getDocumentId() { return document.getId(); }
+    }
+
+    private static final class Pending {
+        private final Item item;
+        private final Future<ExportedFile> result;
+
+        private Pending(Item item, Future<ExportedFile> result) {
+            this.item = item;
+            this.result = result;
+        }
+    }
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private DocumentExportService documentExportService;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxInFlight;
+    private final int maxDocuments;
+
+    public ZipExportService(@Value("${app.export.zip.workers:0}") int workers,
+                            @Value("${app.export.zip.queue-capacity:256}") int queueCapacity,
+                            @Value("${app.export.zip.max-in-flight:8}") int maxInFlight,
+                            @Value("${app.export.zip.max-documents:1000}") int maxDocuments) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.maxInFlight = Math.max(maxInFlight, 1);
+        this.maxDocuments = maxDocuments;
+        // При заполненной очереди документ рендерит сам поток запроса - это и есть обратное давление
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("zip-export-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * Документы архива в порядке записи: ids из запроса или документы по фильтру (новые первыми).
+     * Чужие и несуществующие id в результат не попадают. Документы загружаются здесь целиком
+     * (не больше max-documents), рендеринг потом не обращается к базе за ними.
+     */
+    public List<Item> resolve(User user, ZipExportRequest request) {
+        List<Long> ids = request.getIds() != null
+                ? new ArrayList<>(new LinkedHashSet<>(request.getIds()))
+                : findIds(user, request.toListQuery());
+        if (ids.size() > maxDocuments) {
+            throw new IllegalArgumentException("Too many documents for one archive, at most " + maxDocuments);
+        }
+
+        List<Item> items = new ArrayList<>(ids.size());
+        for (Document document : documentService.loadForExport(user.getId(), ids)) {
+            // Документы без версии рендерятся по текущей версии шаблона; id берутся из прокси без загрузки
+            String templateKey = document.getTemplateVersion() != null
+                    ? "v" + document.getTemplateVersion().getId()
+                    : "t" + document.getTemplate().getId();
+            items.add(new Item(document, templateKey));
+        }
+        return items;
+    }
+
+    private List<Long> findIds(User user, ListQuery query) {
+        List<Long> ids = new ArrayList<>();
+        while (true) {
+            PageResponse<DocumentDTO> page = documentService.getUserDocumentsPage(user, query);
+            for (DocumentDTO document : page.getContent()) {
+                ids.add(document.getId());
+            }
+            if (!page.isHasNext() || page.getNextCursor() == null || ids.size() > maxDocuments) {
+                return ids;
+            }
+            query.setCursor(page.getNextCursor());
+        }
+    }
+
+    /**
+     * Пишет архив в поток по мере готовности документов. Документ, который не удалось
+     * отрендерить, пропускается и перечисляется в errors.txt в конце архива. Поток не закрывается.
+     */
+    public void writeZip(List<Item> items, ExportFormat format, DocxRenderEngine engine,
+                         OutputStream outputStream) throws IOException {
+        Deque<Pending> window = new ArrayDeque<>();
+        Map<String, Future<ExportedFile>> firstByTemplate = new HashMap<>();
+        Set<String> entryNames = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        Iterator<Item> remaining = items.iterator();
+
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(outputStream))) {
+            fillWindow(window, remaining, firstByTemplate, format, engine);
+            while (!window.isEmpty()) {
+                Pending next = window.poll();
+                try {
+                    writeEntry(zip, next.result.get(), entryNames);
+                } catch (ExecutionException | NoSuchFileException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    errors.add("document " + next.item.getDocumentId() + ": " + cause.getMessage());
+                    logger.warn("Document {} skipped in ZIP export: {}", next.item.getDocumentId(), cause.getMessage());
+                }
+                fillWindow(window, remaining, firstByTemplate, format, engine);
+            }
+
+            if (!errors.isEmpty()) {
+                zip.putNextEntry(new ZipEntry(uniqueName(ERRORS_ENTRY, entryNames)));
+                Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+                for (String error : errors) {
+                    writer.write(error);
+                    writer.write('\n');
+                }
+                writer.flush();
+                zip.closeEntry();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing ZIP export", e);
+        } finally {
+            // Клиент отключился или запись прервалась: оставшиеся документы не рендерятся
+            for (Pending pending : window) {
+                pending.result.cancel(true);
+            }
+        }
+
+        logger.debug("ZIP export of {} documents finished, {} skipped", items.size(), errors.size());
+    }
+
+    private void fillWindow(Deque<Pending> window, Iterator<Item> remaining,
+                            Map<String, Future<ExportedFile>> firstByTemplate,
+                            ExportFormat format, DocxRenderEngine engine) {
+        while (window.size() < maxInFlight && remaining.hasNext()) {
+            Item item = remaining.next();
+            Future<ExportedFile> first = firstByTemplate.get(item.templateKey);
+            Future<ExportedFile> result = executor.submit(() -> {
+                if (first != null) {
+                    // Первый документ версии к этому моменту уже взят из очереди (она FIFO) и заполняет кэши
+                    awaitQuietly(first);
+                }
+                return documentExportService.exportInBackground(item.document, format, engine);
+            });
+            firstByTemplate.putIfAbsent(item.templateKey, result);
+            window.add(new Pending(item, result));
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException | CancellationException e) {
+            // Ошибка первого документа - не ошибка этого: он отрендерится и без готовых кэшей
+        }
+    }
+
+    /**
+     * Копирует файл из хранилища артефактов в архив. Канал открывается до записи заголовка,
+     * поэтому вытесненный из хранилища файл дает NoSuchFileException, а не испорченную запись.
+     */
+    private void writeEntry(ZipOutputStream zip, ExportedFile file, Set<String> entryNames) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            ZipEntry entry = new ZipEntry(uniqueName(file.getFileName(), entryNames));
+            if (file.getFormat() == ExportFormat.DOCX) {
+                // DOCX уже сжат: хранится как есть, повторное сжатие только тратит CPU
+                long size = channel.size();
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(crc(channel));
+                channel.position(0);
+            }
+            zip.putNextEntry(entry);
+            Channels.newInputStream(channel).transferTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+    private static long crc(FileChannel channel) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (channel.read(buffer) > 0) {
+            buffer.flip();
+            crc.update(buffer);
+            buffer.clear();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Имя записи без разделителей путей; одинаковые имена получают суффикс " (2)", " (3)"...
+     */
+    private static String uniqueName(String fileName, Set<String> entryNames) {
+        String name = fileName.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_");
+        if (entryNames.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (entryNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,159 @@
+package com.documentgenerationservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.BreakType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFFooter;
+import org.apache.poi.xwpf.usermodel.XWPFHeader;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Корпус DOCX-шаблонов для проверки, что движки POI и STREAMING дают одинаковый текст.
+ * Файлы в fixtures/docx-equivalence/ генерируются этим классом и коммитятся.
+ * Перегенерация: java ... DocxEquivalenceFixtures [каталог]
+ */
+public final class DocxEquivalenceFixtures {
+
+    public static final String[] TEMPLATES = {"split-runs", "tables", "headers-footers"};
+
+    public static final String DATA_FILE = "data.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private DocxEquivalenceFixtures() {}
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "JavaTests/fixtures/docx-equivalence");
+        Files.createDirectories(directory);
+
+        write(directory.resolve("split-runs.docx"), splitRuns());
+        write(directory.resolve("tables.docx"), tables());
+        write(directory.resolve("headers-footers.docx"), headersFooters());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(directory.resolve(DATA_FILE).toFile(), data());
+    }
+
+    public static Path directory() {
+        return Paths.get(System.getProperty("test.fixtures", "JavaTests/fixtures")).resolve("docx-equivalence");
+    }
+
+    static Map<String, String> data() {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("name", "Иван Петров");
+        data.put("company", "ООО \"Ромашка\" & партнеры");
+        data.put("amount", "1 250,00");
+        data.put("date", "01.06.2024");
+        data.put("markup", "<w:t>не разметка</w:t>");
+        data.put("empty", "");
+        data.put("item", "Услуга");
+        data.put("price", "500");
+        data.put("nested", "во вложенной таблице");
+        data.put("title", "Договор №15");
+        data.put("page", "стр.");
+        return data;
+    }
+
+    /**
+     * Переменные, разбитые на несколько run с разным форматированием, несколько переменных в run,
+     * переменная без данных, незакрытая и одиночный "$"
+     */
+    private static XWPFDocument splitRuns() {
+        XWPFDocument document = new XWPFDocument();
+
+        paragraph(document, "Клиент: ${name}, компания ${company}.");
+        XWPFParagraph split = document.createParagraph();
+        run(split, "Сумма: ${am", false);
+        run(split, "ou", true);
+        run(split, "nt} руб. от ${date}", false);
+
+        XWPFParagraph startSplit = document.createParagraph();
+        run(startSplit, "Подпись $", false);
+        run(startSplit, "{name", true);
+        run(startSplit, "}", false);
+
+        paragraph(document, "${name}${company}${date}");
+        paragraph(document, "Значение с разметкой: ${markup}");
+        paragraph(document, "Пустое значение: [${empty}]");
+        paragraph(document, "Нет данных: ${missing}, осталось как есть");
+        paragraph(document, "Цена в $ и незакрытая ${name");
+        paragraph(document, "Без переменных");
+        document.createParagraph();
+        return document;
+    }
+
+    /**
+     * Переменные в ячейках, в том числе разбитые на run, и во вложенной таблице
+     */
+    private static XWPFDocument tables() {
+        XWPFDocument document = new XWPFDocument();
+        paragraph(document, "Счет для ${name}");
+
+        XWPFTable table = document.createTable(3, 2);
+        table.getRow(0).getCell(0).setText("Позиция");
+        table.getRow(0).getCell(1).setText("Цена");
+        table.getRow(1).getCell(0).setText("${item}");
+        XWPFParagraph price = table.getRow(1).getCell(1).getParagraphs().get(0);
+        run(price, "${pr", true);
+        run(price, "ice} руб.", false);
+        XWPFTableCell cell = table.getRow(2).getCell(0);
+        cell.setText("Итого ${amount}");
+        cell.addParagraph().createRun().setText("на ${date}");
+
+        XWPFTableCell outer = table.getRow(2).getCell(1);
+        XWPFTable nested = outer.insertNewTbl(outer.getParagraphs().get(0).getCTP().newCursor());
+        nested.getCTTbl().addNewTblPr();
+        nested.getCTTbl().addNewTr().addNewTc().addNewP().addNewR().addNewT().setStringValue("Текст ${nested}");
+
+        paragraph(document, "После таблицы: ${company}");
+        return document;
+    }
+
+    /**
+     * Колонтитулы: заголовок первой страницы и основной, переменные в них разбиты на run,
+     * таблица в нижнем колонтитуле
+     */
+    private static XWPFDocument headersFooters() {
+        XWPFDocument document = new XWPFDocument();
+
+        XWPFHeader header = document.createHeader(HeaderFooterType.DEFAULT);
+        XWPFParagraph headerParagraph = header.createParagraph();
+        run(headerParagraph, "${ti", true);
+        run(headerParagraph, "tle} - ${name}", false);
+        document.createHeader(HeaderFooterType.FIRST).createParagraph().createRun().setText("Первая: ${company}");
+        XWPFFooter footer = document.createFooter(HeaderFooterType.DEFAULT);
+        footer.createParagraph().createRun().setText("${page} 1, ${date}, ${missing}");
+        footer.createTable(1, 2).getRow(0).getCell(1).setText("Исполнитель: ${company}");
+
+        paragraph(document, "Тело документа для ${name}");
+        document.createParagraph().createRun().addBreak(BreakType.PAGE);
+        paragraph(document, "Вторая страница, ${amount}");
+        return document;
+    }
+
+    private static void paragraph(XWPFDocument document, String text) {
+        document.createParagraph().createRun().setText(text);
+    }
+
+    private static void run(XWPFParagraph paragraph, String text, boolean bold) {
+        XWPFRun run = paragraph.createRun();
+        run.setText(text);
+        run.setBold(bold);
+    }
+
+    private static void write(Path file, XWPFDocument document) throws IOException {
+        try (document; OutputStream outputStream = Files.newOutputStream(file)) {
+            document.write(outputStream);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.TemplateVersion;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Движки POI и STREAMING на корпусе из fixtures/docx-equivalence дают один и тот же текст
+ * в document.xml, header*.xml и footer*.xml: по параграфам, в порядке документа.
+ * Разметка XML у движков разная (POI пересериализует часть целиком), поэтому сравнивается
+ * текст w:t, а не байты.
+ */
+class StreamingDocxRendererEquivalenceTest {
+
+    private static final String WORD_NAMESPACE = StreamingDocxRenderer.WORD_NAMESPACE;
+
+    private static final Pattern TEXT_PART = Pattern.compile("word/(document|header\\d*|footer\\d*)\\.xml");
+
+    private static FileProcessingService fileProcessingService;
+    private static DocxBlobStore docxBlobStore;
+    private static Map<String, String> data;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        data = new ObjectMapper().readValue(
+                DocxEquivalenceFixtures.directory().resolve(DocxEquivalenceFixtures.DATA_FILE).toFile(),
+                new TypeReference<Map<String, String>>() {});
+
+        // Собираем сервис без Spring-контекста, как в бенчмарках
+        fileProcessingService = new FileProcessingService();
+        inject(fileProcessingService, "docxTemplateIndexCache", new DocxTemplateIndexCache(16));
+        inject(fileProcessingService, "streamingDocxRenderer", new StreamingDocxRenderer());
+        GenerationMetrics metrics = new GenerationMetrics();
+        inject(metrics, "meterRegistry", new SimpleMeterRegistry());
+        inject(fileProcessingService, "metrics", metrics);
+        docxBlobStore = new DocxBlobStore(Files.createTempDirectory("equivalence-blobs").toString());
+        docxBlobStore.init();
+        inject(fileProcessingService, "docxBlobStore", docxBlobStore);
+    }
+
+    @ParameterizedTest
+    @MethodSource("templates")
+    void enginesProduceSameText(String fixture) throws Exception {
+        TemplateVersion version = version(DocxEquivalenceFixtures.directory().resolve(fixture + ".docx"));
+
+        Map<String, List<String>> poi = textParts(
+                fileProcessingService.generateDocxFromTemplate(version, data, DocxRenderEngine.POI));
+        Map<String, List<String>> streaming = textParts(
+                fileProcessingService.generateDocxFromTemplate(version, data, DocxRenderEngine.STREAMING));
+
+        assertEquals(poi.keySet(), streaming.keySet(), fixture + ": text parts");
+        for (Map.Entry<String, List<String>> part : poi.entrySet()) {
+            assertEquals(part.getValue(), streaming.get(part.getKey()), fixture + ": " + part.getKey());
+        }
+        // Все переменные с данными подставлены
+        for (List<String> paragraphs : streaming.values()) {
+            for (String paragraph : paragraphs) {
+                for (String field : data.keySet()) {
+                    assertFalse(paragraph.contains("${" + field + "}"), fixture + ": " + paragraph);
+                }
+            }
+        }
+    }
+
+    static Stream<String> templates() {
+        return Stream.of(DocxEquivalenceFixtures.TEMPLATES);
+    }
+
+    private static TemplateVersion version(Path docx) throws Exception {
+        byte[] content = Files.readAllBytes(docx);
+        String hash = DocxBlobStore.hash(content);
+        docxBlobStore.putIfAbsent(hash, content);
+
+        Template template = new Template(docx.getFileName().toString(), "", null);
+        template.setId((long) hash.hashCode());
+        template.setDocxBlobHash(hash);
+        TemplateVersion version = new TemplateVersion(template, 1);
+        inject(version, "id", template.getId());
+        return version;
+    }
+
+    /**
+     * Текст параграфов каждой текстовой части архива
+     */
+    private static Map<String, List<String>> textParts(byte[] docx) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+
+        Map<String, List<String>> parts = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(docx))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!TEXT_PART.matcher(entry.getName()).matches()) {
+                    continue;
+                }
+                org.w3c.dom.Document part = builder.parse(new ByteArrayInputStream(zip.readAllBytes()));
+                parts.put(entry.getName(), paragraphs(part));
+            }
+        }
+        return parts;
+    }
+
+    private static List<String> paragraphs(org.w3c.dom.Document part) {
+        List<String> result = new ArrayList<>();
+        NodeList paragraphs = part.getElementsByTagNameNS(WORD_NAMESPACE, "p");
+        for (int i = 0; i < paragraphs.getLength(); i++) {
+            StringBuilder text = new StringBuilder();
+            NodeList texts = ((Element) paragraphs.item(i)).getElementsByTagNameNS(WORD_NAMESPACE, "t");
+            for (int j = 0; j < texts.getLength(); j++) {
+                // Параграфы вложенных таблиц считаются отдельно, здесь только собственные w:t
+                Element t = (Element) texts.item(j);
+                if (closestParagraph(t) == paragraphs.item(i)) {
+                    text.append(t.getTextContent());
+                }
+            }
+            result.add(text.toString());
+        }
+        return result;
+    }
+
+    private static org.w3c.dom.Node closestParagraph(org.w3c.dom.Node node) {
+        org.w3c.dom.Node current = node.getParentNode();
+        while (current != null && !("p".equals(current.getLocalName())
+                && WORD_NAMESPACE.equals(current.getNamespaceURI()))) {
+            current = current.getParentNode();
+        }
+        return current;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,77 @@
+package com.documentgenerationservice.service;
+
+import com.documentgenerationservice.model.Document;
+import com.documentgenerationservice.model.Template;
+import com.documentgenerationservice.model.User;
+import com.documentgenerationservice.repository.TemplateRepository;
+import com.documentgenerationservice.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Шаблон, сохраненный до появления версий (current_version_id = null), получает первую версию
+ * при генерации и в TemplateVersionMigration. Версия создается через прокси TemplateVersionService,
+ * то есть в транзакции с блокировкой строки шаблона.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:template-without-version;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.template-versions.migrate-on-startup=false",
+        "app.blobs.migrate-on-startup=false",
+        "app.documents.migrate-data-on-startup=false",
+        "app.documents.content-backfill-on-startup=false",
+        "app.artifacts.dir=${java.io.tmpdir}/template-without-version/artifacts",
+        "app.blobs.dir=${java.io.tmpdir}/template-without-version/blobs"
+})
+class TemplateWithoutVersionTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TemplateRepository templateRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private TemplateVersionMigration templateVersionMigration;
+
+    @Test
+    void generateCreatesFirstVersion() {
+        User user = userRepository.save(new User("generate-user", "generate@example.com", "password"));
+        Template template = legacyTemplate("Legacy generate", user);
+
+        Document document = documentService.generateDocument("Doc", template, user, Map.of("name", "Bob"));
+
+        assertEquals("Hello Bob", document.getGeneratedContent());
+        Template saved = templateRepository.findById(template.getId()).orElseThrow();
+        assertNotNull(saved.getCurrentVersionId());
+        assertEquals(saved.getCurrentVersionId(), document.getTemplateVersion().getId());
+    }
+
+    @Test
+    void migrationCreatesFirstVersion() {
+        User user = userRepository.save(new User("migration-user", "migration@example.com", "password"));
+        Template template = legacyTemplate("Legacy migration", user);
+
+        templateVersionMigration.run();
+
+        assertNotNull(templateRepository.findById(template.getId()).orElseThrow().getCurrentVersionId());
+    }
+
+    /**
+     * Шаблон в том виде, в каком он лежит в базе с версии до TemplateVersion
+     */
+    private Template legacyTemplate(String name, User user) {
+        Template template = new Template(name, "Hello ${name}", user);
+        template.setFields(Map.of("name", "text"));
+        return templateRepository.save(template);
+    }
+}
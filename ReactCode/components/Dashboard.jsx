@@ -24,23 +24,24 @@ function Dashboard() {
             console.log('Fetching dashboard data...');
 
             const [templatesRes, documentsRes] = await Promise.all([
-                axios.get('/api/templates'),
-                axios.get('/api/documents')
+                axios.get('/api/templates', { params: { size: 1 } }),
+                axios.get('/api/documents', { params: { size: 5 } })
             ]);
 
             console.log('Templates response:', templatesRes.data);
             console.log('Documents response:', documentsRes.data);
 
-            // Гарантируем, что данные всегда массивы
-            const templatesData = Array.isArray(templatesRes.data) ? templatesRes.data : [];
-            const documentsData = Array.isArray(documentsRes.data) ? documentsRes.data : [];
+            // Гарантируем, что данные всегда массивы, а счетчики берем из totalElements
+            const documentsData = Array.isArray(documentsRes.data?.content) ? documentsRes.data.content : [];
+            const templatesCount = templatesRes.data?.totalElements || 0;
+            const documentsCount = documentsRes.data?.totalElements || 0;
 
-            console.log('Templates count:', templatesData.length);
-            console.log('Documents count:', documentsData.length);
+            console.log('Templates count:', templatesCount);
+            console.log('Documents count:', documentsCount);
 
             setStats({
-                templates: templatesData.length,
-                documents: documentsData.length
+                templates: templatesCount,
+                documents: documentsCount
             });
 
             const recentDocs = documentsData.slice(0, 5);
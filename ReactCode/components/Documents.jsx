@@ -14,6 +14,7 @@ function Documents() {
     });
     const [loading, setLoading] = useState(false);
     const [documentsLoading, setDocumentsLoading] = useState(true);
+    const [nextCursor, setNextCursor] = useState(null);
 
     useEffect(() => {
         axios.defaults.baseURL = 'http://localhost:8080';
@@ -29,20 +30,35 @@ function Documents() {
         try {
             setDocumentsLoading(true);
             const response = await axios.get('/api/documents');
-            const documentsData = Array.isArray(response.data) ? response.data : [];
+            const documentsData = Array.isArray(response.data?.content) ? response.data.content : [];
             setDocuments(documentsData);
+            setNextCursor(response.data?.nextCursor || null);
         } catch (error) {
             console.error('Error fetching documents:', error);
             setDocuments([]);
+            setNextCursor(null);
         } finally {
             setDocumentsLoading(false);
         }
     };
 
+    // Следующая страница по курсору, без OFFSET на сервере
+    const loadMoreDocuments = async () => {
+        if (!nextCursor) return;
+        try {
+            const response = await axios.get('/api/documents', { params: { cursor: nextCursor } });
+            const documentsData = Array.isArray(response.data?.content) ? response.data.content : [];
+            setDocuments(prev => [...prev, ...documentsData]);
+            setNextCursor(response.data?.nextCursor || null);
+        } catch (error) {
+            console.error('Error fetching more documents:', error);
+        }
+    };
+
     const fetchTemplates = async () => {
         try {
-            const response = await axios.get('/api/templates');
-            const templatesData = Array.isArray(response.data) ? response.data : [];
+            const response = await axios.get('/api/templates', { params: { size: 200 } });
+            const templatesData = Array.isArray(response.data?.content) ? response.data.content : [];
             setTemplates(templatesData);
         } catch (error) {
             console.error('Error fetching templates:', error);
@@ -339,6 +355,14 @@ function Documents() {
                     ))}
                 </div>
             )}
+
+            {!documentsLoading && nextCursor && (
+                <div className="flex items-center gap-2 mt-3">
+                    <button className="btn btn-secondary" onClick={loadMoreDocuments}>
+                        Load more
+                    </button>
+                </div>
+            )}
         </div>
     );
 }
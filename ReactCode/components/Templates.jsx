@@ -29,8 +29,8 @@ function Templates() {
 
     const fetchTemplates = async () => {
         try {
-            const response = await axios.get('/api/templates');
-            const templatesData = Array.isArray(response.data) ? response.data : [];
+            const response = await axios.get('/api/templates', { params: { size: 200 } });
+            const templatesData = Array.isArray(response.data?.content) ? response.data.content : [];
             setTemplates(templatesData);
         } catch (error) {
             console.error('Error fetching templates:', error);
@@ -116,9 +116,16 @@ function Templates() {
         }
     };
 
-    const startEditTemplate = (template) => {
-        setEditingTemplate({ ...template });
-        setShowEditForm(true);
+    const startEditTemplate = async (template) => {
+        try {
+            // Список шаблонов не содержит текст, загружаем шаблон целиком
+            const response = await axios.get(`/api/templates/${template.id}`);
+            setEditingTemplate({ ...response.data });
+            setShowEditForm(true);
+        } catch (error) {
+            console.error('Error loading template:', error);
+            alert('Error loading template: ' + (error.response?.data || error.message));
+        }
     };
 
     const handleFileChange = (e) => {